@@ -0,0 +1,20 @@
+package com.suayan.core.extractor;
+
+/**
+ * A bounded, in memory journal of the resource changes observed under
+ * the content root, used to answer delta extracts.
+ * 
+ * The journal only knows the changes observed since it was activated,
+ * and forgets the oldest ones once it is full. A watermark from before
+ * that can not be answered; the client has to run a full extract.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ChangeJournal {
+    /**
+     * @param since the client's watermark in epoch millis
+     * @return the changes since the watermark, null if the journal does not go back that far
+     */
+    public ExtractDelta getDelta(long since);
+}
@@ -0,0 +1,23 @@
+package com.suayan.core.extractor;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Size of the ChangeJournal used by delta extracts.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Change Journal Configuration", 
+	description = "Resource changes kept to answer delta extracts"
+)
+public @interface ChangeJournalConfig {
+	@AttributeDefinition(name = "Enabled", description = "Keep a journal of changes. Without it every delta extract is refused.", type = AttributeType.BOOLEAN)
+	boolean enabled() default true;
+
+	@AttributeDefinition(name = "Max entries", description = "Maximum number of changes kept. Watermarks older than the oldest kept change are refused.", type = AttributeType.INTEGER)
+	int maxEntries() default 10000;
+
+	@AttributeDefinition(name = "Observed paths", description = "Resource changes under these paths are journaled.")
+	String[] resource_paths() default { "/content" };
+}
@@ -0,0 +1,122 @@
+package com.suayan.core.extractor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+
+/**
+ * A ChangeJournal fed by resource change events, local and from other
+ * cluster instances, under the observed paths (/content by default).
+ *
+ * Changes are stamped with the time they are observed, which is never
+ * before they were saved, so a change is never older than a watermark
+ * handed out before it was visible.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(
+    service = { ChangeJournal.class, ResourceChangeListener.class },
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+@Designate(ocd = ChangeJournalConfig.class)
+public class ChangeJournalImpl implements ChangeJournal, ResourceChangeListener, ExternalResourceChangeListener {
+
+    // oldest first, guarded by itself.
+    private final Deque<Entry> entries = new ArrayDeque<Entry>();
+    // every change after this millisecond is in entries, guarded by entries.
+    private long completeSince = Long.MAX_VALUE;
+    private volatile int maxEntries = 0;
+
+    @Activate
+    @Modified
+    protected void activate(ChangeJournalConfig config) {
+        synchronized (entries) {
+            entries.clear();
+            maxEntries = config.enabled() ? Math.max(0, config.maxEntries()) : 0;
+            completeSince = maxEntries > 0 ? System.currentTimeMillis() : Long.MAX_VALUE;
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        synchronized (entries) {
+            entries.clear();
+            maxEntries = 0;
+            completeSince = Long.MAX_VALUE;
+        }
+    }
+
+    public ExtractDelta getDelta(long since) {
+        Set<String> changed = new LinkedHashSet<String>();
+        Set<String> removed = new LinkedHashSet<String>();
+        synchronized (entries) {
+            // changes within the millisecond of since may be missing.
+            if (since <= completeSince) {
+                return null;
+            }
+            for (Entry entry : entries) {
+                // a change in the same millisecond as since may be newer.
+                if (entry.time < since) {
+                    continue;
+                }
+                if (entry.type == ChangeType.REMOVED) {
+                    removed.add(entry.path);
+                } else {
+                    changed.add(entry.path);
+                }
+            }
+        }
+        return new ExtractDelta(since, changed, removed);
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            if (maxEntries == 0) {
+                return;
+            }
+            for (ResourceChange change : changes) {
+                if (change.getPath() == null) {
+                    continue;
+                }
+                entries.addLast(new Entry(now, change.getType(), change.getPath()));
+                while (entries.size() > maxEntries) {
+                    // changes up to the dropped one are no longer complete.
+                    completeSince = Math.max(completeSince, entries.removeFirst().time);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long time;
+        private final ChangeType type;
+        private final String path;
+
+        private Entry(long time, ChangeType type, String path) {
+            this.time = time;
+            this.type = type;
+            this.path = path;
+        }
+    }
+}
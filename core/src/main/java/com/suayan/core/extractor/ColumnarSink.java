@@ -0,0 +1,399 @@
+package com.suayan.core.extractor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Stream extracted records to an OutputStream in a compact, typed,
+ * columnar binary layout for analytics loaders.
+ *
+ * Records are buffered into row groups of up to ROW_GROUP_SIZE rows and
+ * each group is written column by column. Columns are fixed the same way
+ * as for CSV: the targetProperty of each rule, or the keys of the first
+ * record of a default extract. All numbers are big-endian.
+ *
+ * <pre>
+ * stream  := "CCOL" version:u8 columnCount:varint column* group* 0:varint footer
+ * column  := name:string type:u8
+ * string  := length:varint utf8
+ * group   := rowCount:varint chunk*
+ * chunk   := encoding:u8 [hasNulls:u8 [presence:bitmap]] values
+ * footer  := truncated:u8 [reason:string]
+ * </pre>
+ *
+ * The type of each column is fixed once for the stream from the JSON
+ * values of the first group, which carry the JCR PropertyType of the
+ * properties since this is a TypedExtractSink, and is written with its
+ * name:
+ * <ul>
+ * <li>BOOLEAN (1): one bit per present value</li>
+ * <li>LONG (2): zigzag varint per present value; dates are epoch millis</li>
+ * <li>DOUBLE (3): 8 byte IEEE 754 per present value</li>
+ * <li>STRING (4): length:varint utf8 per present value</li>
+ * </ul>
+ * Columns of mixed types, and columns without a value in the first group,
+ * are STRING; nested objects and arrays are their JSON string. Later
+ * values that do not fit a BOOLEAN, LONG or DOUBLE column are written as
+ * missing, and so is "", which a PROPERTY rule emits for a missing
+ * property.
+ *
+ * Each chunk starts with its encoding: the column's type, NULL (0) when
+ * the group has no value for the column and nothing follows, or
+ * DICTIONARY (5) for a STRING chunk whose values repeat, such as
+ * sling:resourceType: size:varint string*, then an index:varint per
+ * present value. A bitmap has one bit per row, least significant bit
+ * first, set for a present value.
+ *
+ * The footer is 0 for a complete result, or 1 followed by the reason the
+ * extract stopped early. A stream without it was cut off.
+ *
+ * The underlying stream is flushed after each group but not closed by end().
+ *
+ * @author Kyo Suayan
+ *
+ */
+public class ColumnarSink implements TypedExtractSink {
+
+    public static final String CONTENT_TYPE = "application/vnd.ccui.columnar";
+
+    static final byte[] MAGIC = { 'C', 'C', 'O', 'L' };
+    static final int VERSION = 2;
+    static final int NULL = 0;
+    static final int BOOLEAN = 1;
+    static final int LONG = 2;
+    static final int DOUBLE = 3;
+    static final int STRING = 4;
+    static final int DICTIONARY = 5;
+
+    private static final int ROW_GROUP_SIZE = 4096;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private List<String> columns = null;
+    private int[] types = null;
+    private final List<ObjectNode> rows = new ArrayList<ObjectNode>();
+    private boolean headerWritten = false;
+    private int count = 0;
+    private int dropped = 0;
+
+    public ColumnarSink(OutputStream out) {
+        this(out, ROW_GROUP_SIZE);
+    }
+
+    ColumnarSink(OutputStream out, int rowGroupSize) {
+        this.out = new DataOutputStream(out);
+        this.rowGroupSize = Math.max(1, rowGroupSize);
+    }
+
+    public void begin(List<ExtractRule> rules) throws IOException {
+        Set<String> names = new LinkedHashSet<String>();
+        if (rules != null) {
+            for (ExtractRule rule : rules) {
+                if (StringUtils.isNotEmpty(rule.getTargetProperty())) {
+                    names.add(rule.getTargetProperty());
+                }
+            }
+        }
+        columns = new ArrayList<String>(names);
+    }
+
+    public void accept(ObjectNode record) throws IOException {
+        if (record == null) {
+            return;
+        }
+        if (columns.isEmpty() && !headerWritten) {
+            Iterator<String> names = record.fieldNames();
+            while (names.hasNext()) {
+                columns.add(names.next());
+            }
+        }
+        rows.add(record);
+        count++;
+        if (rows.size() >= rowGroupSize) {
+            writeGroup();
+        }
+    }
+
+    public void end(String truncated) throws IOException {
+        if (!rows.isEmpty()) {
+            writeGroup();
+        }
+        writeHeader();
+        writeVarint(0);
+        if (truncated == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            writeString(truncated);
+        }
+        out.flush();
+        if (dropped > 0) {
+            log.warn("{} values did not fit the type of their column and were written as missing.", dropped);
+        }
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        headerWritten = true;
+        types = new int[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = typeOf(columns.get(i));
+        }
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(columns.size());
+        for (int i = 0; i < types.length; i++) {
+            writeString(columns.get(i));
+            out.writeByte(types[i]);
+        }
+    }
+
+    /**
+     * @return the type of the column's values in the buffered rows, STRING if mixed or none
+     */
+    private int typeOf(String column) {
+        boolean booleans = true;
+        boolean longs = true;
+        boolean numbers = true;
+        boolean present = false;
+        for (ObjectNode row : rows) {
+            JsonNode value = row.get(column);
+            if (isMissing(value)) {
+                continue;
+            }
+            present = true;
+            booleans &= value.isBoolean();
+            longs &= value.isIntegralNumber() && value.canConvertToLong();
+            numbers &= value.isNumber();
+        }
+        if (!present) {
+            return STRING;
+        } else if (booleans) {
+            return BOOLEAN;
+        } else if (longs) {
+            return LONG;
+        } else if (numbers) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    private void writeGroup() throws IOException {
+        writeHeader();
+        writeVarint(rows.size());
+        List<JsonNode> values = new ArrayList<JsonNode>(rows.size());
+        for (int i = 0; i < types.length; i++) {
+            values.clear();
+            for (ObjectNode row : rows) {
+                values.add(fit(types[i], row.get(columns.get(i))));
+            }
+            writeColumn(types[i], values);
+        }
+        rows.clear();
+        out.flush();
+    }
+
+    /**
+     * @return value if it can be written to a column of type, else null
+     */
+    private JsonNode fit(int type, JsonNode value) {
+        if (value == null || value.isNull() || value.isMissingNode()) {
+            return null;
+        }
+        if (type == STRING) {
+            return value;
+        }
+        boolean fits;
+        if (type == BOOLEAN) {
+            fits = value.isBoolean();
+        } else if (type == LONG) {
+            fits = value.isIntegralNumber() && value.canConvertToLong();
+        } else {
+            fits = value.isNumber();
+        }
+        if (!fits && !isMissing(value)) {
+            dropped++;
+        }
+        return fits ? value : null;
+    }
+
+    /**
+     * @return true for no value, null or ""
+     */
+    private boolean isMissing(JsonNode value) {
+        return value == null || value.isNull() || value.isMissingNode()
+                || (value.isTextual() && value.textValue().isEmpty());
+    }
+
+    private void writeColumn(int columnType, List<JsonNode> values) throws IOException {
+        int present = 0;
+        for (JsonNode value : values) {
+            if (value != null) {
+                present++;
+            }
+        }
+        if (present == 0) {
+            out.writeByte(NULL);
+            return;
+        }
+        Map<String, Integer> dictionary = null;
+        int type = columnType;
+        if (type == STRING) {
+            dictionary = dictionaryOf(values, present);
+            type = dictionary != null ? DICTIONARY : STRING;
+        }
+        out.writeByte(type);
+        if (present == values.size()) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            writePresence(values);
+        }
+        switch (type) {
+            case BOOLEAN:
+                writeBooleans(values);
+                break;
+            case LONG:
+                for (JsonNode value : values) {
+                    if (value != null) {
+                        long v = value.asLong();
+                        writeVarint((v << 1) ^ (v >> 63));
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (JsonNode value : values) {
+                    if (value != null) {
+                        out.writeDouble(value.asDouble());
+                    }
+                }
+                break;
+            case DICTIONARY:
+                writeVarint(dictionary.size());
+                for (String entry : dictionary.keySet()) {
+                    writeString(entry);
+                }
+                for (JsonNode value : values) {
+                    if (value != null) {
+                        writeVarint(dictionary.get(toText(value)));
+                    }
+                }
+                break;
+            default:
+                for (JsonNode value : values) {
+                    if (value != null) {
+                        writeString(toText(value));
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the distinct values in order of appearance, null if they repeat too little
+     */
+    private Map<String, Integer> dictionaryOf(List<JsonNode> values, int present) {
+        Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+        int limit = present / 2;
+        for (JsonNode value : values) {
+            if (value == null) {
+                continue;
+            }
+            String text = toText(value);
+            if (!dictionary.containsKey(text)) {
+                if (dictionary.size() >= limit) {
+                    return null;
+                }
+                dictionary.put(text, dictionary.size());
+            }
+        }
+        return dictionary;
+    }
+
+    private void writePresence(List<JsonNode> values) throws IOException {
+        int bits = 0;
+        int n = 0;
+        for (JsonNode value : values) {
+            if (value != null) {
+                bits |= 1 << n;
+            }
+            if (++n == 8) {
+                out.writeByte(bits);
+                bits = 0;
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            out.writeByte(bits);
+        }
+    }
+
+    private void writeBooleans(List<JsonNode> values) throws IOException {
+        int bits = 0;
+        int n = 0;
+        for (JsonNode value : values) {
+            if (value == null) {
+                continue;
+            }
+            if (value.booleanValue()) {
+                bits |= 1 << n;
+            }
+            if (++n == 8) {
+                out.writeByte(bits);
+                bits = 0;
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            out.writeByte(bits);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private String toText(JsonNode value) {
+        if (value.isContainerNode()) {
+            return value.toString();
+        }
+        return value.asText();
+    }
+}
@@ -0,0 +1,121 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+/**
+ * Stream extracted records to a Writer as CSV, one row per record.
+ *
+ * The header is fixed from the targetProperty of each ExtractRule
+ * so every row has the same columns regardless of which properties
+ * the first node happened to have. For a default extract (no rules)
+ * the header falls back to the keys of the first record. An empty
+ * result is written as the header line only. A truncated result ends
+ * with a row whose first cell is "@truncated:" and the reason.
+ *
+ * Nested objects and arrays are written as their JSON string.
+ * The underlying Writer is flushed but not closed by end().
+ *
+ * @author Kyo Suayan
+ *
+ */
+public class CsvRecordSink implements ExtractSink {
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private final Writer writer;
+    private List<String> columns = null;
+    private SequenceWriter rows = null;
+    private int count = 0;
+
+    public CsvRecordSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void begin(List<ExtractRule> rules) throws IOException {
+        Set<String> names = new LinkedHashSet<String>();
+        if (rules != null) {
+            for (ExtractRule rule : rules) {
+                if (StringUtils.isNotEmpty(rule.getTargetProperty())) {
+                    names.add(rule.getTargetProperty());
+                }
+            }
+        }
+        columns = new ArrayList<String>(names);
+    }
+
+    public void accept(ObjectNode record) throws IOException {
+        if (record == null) {
+            return;
+        }
+        if (rows == null) {
+            if (columns.isEmpty()) {
+                Iterator<String> names = record.fieldNames();
+                while (names.hasNext()) {
+                    columns.add(names.next());
+                }
+            }
+            open();
+        }
+        String[] row = new String[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = toCell(record.get(columns.get(i)));
+        }
+        rows.write(row);
+        count++;
+    }
+
+    public void end(String truncated) throws IOException {
+        if (rows == null && !columns.isEmpty()) {
+            // the header is only written with the first row, so write it on its own.
+            CSV_MAPPER.writer(CsvSchema.emptySchema()).writeValues(writer).write(columns.toArray()).flush();
+        } else if (rows != null) {
+            rows.flush();
+        }
+        if (truncated != null) {
+            String[] row = new String[Math.max(1, columns.size())];
+            Arrays.fill(row, "");
+            row[0] = TRUNCATED + ":" + truncated;
+            CSV_MAPPER.writer(CsvSchema.emptySchema()).writeValues(writer).write(row).flush();
+        }
+    }
+
+    /**
+     * @return the number of rows written, excluding the header
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void open() throws IOException {
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String column : columns) {
+            schema.addColumn(column);
+        }
+        rows = CSV_MAPPER.writer(schema.build().withHeader()).writeValues(writer);
+    }
+
+    private String toCell(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return "";
+        }
+        if (value.isContainerNode()) {
+            return value.toString();
+        }
+        return value.asText();
+    }
+}
@@ -0,0 +1,22 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a batch of extracts, one named result at a
+ * time, in the order of the batch.
+ * 
+ * open() is called for each result and the returned sink then gets the
+ * usual begin(), accept() and end() calls before the next result is
+ * opened. An extract that fails before its sink's begin() is reported
+ * with error() instead.
+ * end() is called once after the last result.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractBatchSink {
+    public ExtractSink open(String name) throws IOException;
+    public void error(String name, String message) throws IOException;
+    public void end() throws IOException;
+}
@@ -0,0 +1,186 @@
+package com.suayan.core.extractor;
+
+import javax.jcr.query.Query;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.suayan.core.sling.QueryTemplate;
+
+/**
+ * An immutable, parsed extractor config: the query template (parsed once),
+ * its language, the requested parallelism, the deep extract limits,
+ * the budget of the whole extract and the compiled ExtractPlan.
+ * 
+ * Built from the JSON files under /apps/ccui/extractor or from
+ * a JSON query object posted to the extractor servlet.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractConfig {
+
+    private final String query;
+    private final String language;
+    private final QueryTemplate queryTemplate;
+    private final boolean recurse;
+    private final int parallelism;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final boolean cacheable;
+    private final int maxResults;
+    private final int maxMillis;
+    private final ExtractPlan plan;
+
+    public ExtractConfig(String query, String language, boolean recurse, int parallelism, ExtractPlan plan) {
+        this(query, language, recurse, parallelism, ExtractContext.UNLIMITED, ExtractContext.UNLIMITED, true, plan);
+    }
+
+    public ExtractConfig(String query, String language, boolean recurse, int parallelism, int maxDepth,
+            int maxNodes, boolean cacheable, ExtractPlan plan) {
+        this(query, language, recurse, parallelism, maxDepth, maxNodes, cacheable, ExtractContext.UNLIMITED,
+                ExtractContext.UNLIMITED, plan);
+    }
+
+    public ExtractConfig(String query, String language, boolean recurse, int parallelism, int maxDepth,
+            int maxNodes, boolean cacheable, int maxResults, int maxMillis, ExtractPlan plan) {
+        this.query = query;
+        this.language = language;
+        this.queryTemplate = QueryTemplate.parse(query, language);
+        this.recurse = recurse;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxDepth = Math.max(ExtractContext.UNLIMITED, maxDepth);
+        this.maxNodes = Math.max(ExtractContext.UNLIMITED, maxNodes);
+        this.cacheable = cacheable;
+        this.maxResults = Math.max(ExtractContext.UNLIMITED, maxResults);
+        this.maxMillis = Math.max(ExtractContext.UNLIMITED, maxMillis);
+        this.plan = plan;
+    }
+
+    /**
+     * Parse a JSON query object.
+     * @param jsonObj
+     * @return
+     * @throws JSONException if the query is missing or a field has the wrong type
+     */
+    public static ExtractConfig fromJson(JSONObject jsonObj) throws JSONException {
+        String query = jsonObj.getString("query");
+        String language = Query.JCR_SQL2;
+        if (jsonObj.has("language")) {
+            language = jsonObj.getString("language");
+        }
+        boolean recurse = false;
+        if (jsonObj.has("recurse")) {
+            recurse = jsonObj.getBoolean("recurse");
+        }
+        int parallelism = 1;
+        if (jsonObj.has("parallelism")) {
+            parallelism = jsonObj.getInt("parallelism");
+        }
+        int maxDepth = jsonObj.optInt("maxDepth", ExtractContext.UNLIMITED);
+        int maxNodes = jsonObj.optInt("maxNodes", ExtractContext.UNLIMITED);
+        boolean cacheable = jsonObj.optBoolean("cache", true);
+        int maxResults = jsonObj.optInt("maxResults", ExtractContext.UNLIMITED);
+        int maxMillis = jsonObj.optInt("maxMillis", ExtractContext.UNLIMITED);
+        ExtractPlan plan = ExtractPlan.compile(null);
+        if (jsonObj.has("rules")) {
+            plan = new ExtractRulesParser(jsonObj.getJSONArray("rules")).compileExtractPlan();
+        }
+        return new ExtractConfig(query, language, recurse, parallelism, maxDepth, maxNodes, cacheable, maxResults,
+                maxMillis, plan);
+    }
+
+    /**
+     * @return the query template, with {key} placeholders
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the query parsed once into a template
+     */
+    public QueryTemplate getQueryTemplate() {
+        return queryTemplate;
+    }
+
+    /**
+     * @return the query language
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the recurse flag
+     */
+    public boolean isRecurse() {
+        return recurse;
+    }
+
+    /**
+     * @return the levels of children read by a deep extract, UNLIMITED for all
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the most nodes read by one deep extract, UNLIMITED for all
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return false if the config sets "cache" to false
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * @return the most query result nodes one extract reads, UNLIMITED for all
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * @return the milliseconds one extract may run for, UNLIMITED for no limit
+     */
+    public int getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return a new context for one extract with this config, starting now
+     */
+    public ExtractContext newContext() {
+        return newContext(ExtractContext.UNLIMITED, ExtractContext.UNLIMITED);
+    }
+
+    /**
+     * @param maxDepthCap upper bound for maxDepth, UNLIMITED for none
+     * @param maxNodesCap upper bound for maxNodes, UNLIMITED for none
+     * @return a new context for one extract with this config, starting now
+     */
+    public ExtractContext newContext(int maxDepthCap, int maxNodesCap) {
+        return new ExtractContext(recurse, ExtractContext.limit(maxDepth, maxDepthCap),
+                ExtractContext.limit(maxNodes, maxNodesCap));
+    }
+
+    /**
+     * @return the number of workers requested by the config, at least 1
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the compiled rules, empty for a default extract
+     */
+    public ExtractPlan getPlan() {
+        return plan;
+    }
+}
@@ -0,0 +1,20 @@
+package com.suayan.core.extractor;
+
+/**
+ * Parsed extractor configs keyed by their JCR path.
+ * 
+ * A cached config is reused until the file's jcr:lastModified changes
+ * or a resource change under /apps/ccui/extractor invalidates it.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractConfigCache {
+    /**
+     * @param filepath path of the JSON config, relative to the repository root
+     * @return the parsed config or null if it can not be read or parsed
+     */
+    public ExtractConfig getConfig(String filepath);
+    public void invalidate(String filepath);
+    public void clear();
+}
@@ -0,0 +1,118 @@
+package com.suayan.core.extractor;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parsed extractor configs.
+ * 
+ * Each lookup compares the file's jcr:lastModified with the cached copy,
+ * which is a single property read, and only re-reads and re-parses the
+ * binary when it changed. Resource changes under /apps/ccui/extractor
+ * drop the affected entries right away, which also covers files
+ * without a jcr:lastModified.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+@Component(
+    service = { ExtractConfigCache.class, ResourceChangeListener.class },
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/apps/ccui/extractor",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class ExtractConfigCacheImpl implements ExtractConfigCache, ResourceChangeListener {
+
+    @Reference
+    JcrReader jcrReader;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, Entry> configs = new ConcurrentHashMap<String, Entry>();
+
+    @Deactivate
+    protected void deactivate() {
+        configs.clear();
+    }
+
+    public ExtractConfig getConfig(String filepath) {
+        if (StringUtils.isBlank(filepath)) {
+            return null;
+        }
+        long lastModified = jcrReader.getLastModified(filepath);
+        Entry entry = configs.get(filepath);
+        if (entry != null && entry.lastModified == lastModified) {
+            return entry.config;
+        }
+        ExtractConfig config = load(filepath);
+        if (config != null) {
+            configs.put(filepath, new Entry(config, lastModified));
+        } else {
+            configs.remove(filepath);
+        }
+        return config;
+    }
+
+    public void invalidate(String filepath) {
+        if (filepath != null) {
+            configs.remove(filepath);
+        }
+    }
+
+    public void clear() {
+        configs.clear();
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            // cache keys are relative to the root node.
+            String changed = StringUtils.removeStart(change.getPath(), "/");
+            Iterator<String> keys = configs.keySet().iterator();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (changed.startsWith(key) || key.startsWith(changed)) {
+                    log.debug("Extractor config changed: {}", key);
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    private ExtractConfig load(String filepath) {
+        String jsonConfig = jcrReader.readToString(filepath);
+        try {
+            return ExtractConfig.fromJson(new JSONObject(jsonConfig));
+        } catch (JSONException e) {
+            log.error(">>> Unable to parse extractor config {}: {}", filepath, e.getMessage());
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        private final ExtractConfig config;
+        private final long lastModified;
+
+        private Entry(ExtractConfig config, long lastModified) {
+            this.config = config;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.suayan.core.extractor;
+
+/**
+ * Immutable settings for one extract: the recurse flag, the traversal
+ * limits, the time the extract started, whether property values keep
+ * their JCR type and, within a batch request, the ExtractMemo shared by
+ * the extracts of the batch.
+ *
+ * A new context is created for every request and handed to each
+ * JsonExtractor working on it, so concurrent extracts never share
+ * mutable state on the ScannerService.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractContext {
+
+    /**
+     * No limit for maxDepth or maxNodes.
+     */
+    public static final int UNLIMITED = 0;
+
+    private final boolean recurse;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final long startTime;
+    private final ExtractMemo memo;
+    private final boolean typedValues;
+
+    /**
+     * @param recurse the recurse flag of the config
+     * @param maxDepth the deepest child level of a deep extract, UNLIMITED for none
+     * @param maxNodes the most nodes read by one deep extract, UNLIMITED for none
+     */
+    public ExtractContext(boolean recurse, int maxDepth, int maxNodes) {
+        this(recurse, maxDepth, maxNodes, System.currentTimeMillis(), null, false);
+    }
+
+    private ExtractContext(boolean recurse, int maxDepth, int maxNodes, long startTime, ExtractMemo memo,
+            boolean typedValues) {
+        this.recurse = recurse;
+        this.maxDepth = Math.max(UNLIMITED, maxDepth);
+        this.maxNodes = Math.max(UNLIMITED, maxNodes);
+        this.startTime = startTime;
+        this.memo = memo;
+        this.typedValues = typedValues;
+    }
+
+    /**
+     * @param memo the memo of the batch this extract is part of
+     * @return this context sharing results through memo
+     */
+    public ExtractContext withMemo(ExtractMemo memo) {
+        return new ExtractContext(recurse, maxDepth, maxNodes, startTime, memo, typedValues);
+    }
+
+    /**
+     * @return this context for a TypedExtractSink
+     */
+    public ExtractContext withTypedValues() {
+        return new ExtractContext(recurse, maxDepth, maxNodes, startTime, memo, true);
+    }
+
+    /**
+     * Apply an upper bound to a limit where UNLIMITED means no limit.
+     * @param limit
+     * @param cap
+     * @return the tighter of the two
+     */
+    public static int limit(int limit, int cap) {
+        if (limit <= UNLIMITED) {
+            return Math.max(UNLIMITED, cap);
+        }
+        if (cap <= UNLIMITED) {
+            return limit;
+        }
+        return Math.min(limit, cap);
+    }
+
+    /**
+     * @return a context without limits, starting now
+     */
+    public static ExtractContext defaults() {
+        return new ExtractContext(false, UNLIMITED, UNLIMITED);
+    }
+
+    public boolean isRecurse() {
+        return recurse;
+    }
+
+    /**
+     * @return the deepest child level, UNLIMITED for none
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the most nodes read by one deep extract, UNLIMITED for none
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return the start of the extract in milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the memo shared within a batch, null outside of one
+     */
+    public ExtractMemo getMemo() {
+        return memo;
+    }
+
+    /**
+     * @return true if PROPERTY rules emit values with their JCR type rather than strings
+     */
+    public boolean isTypedValues() {
+        return typedValues;
+    }
+
+    /**
+     * @return milliseconds since the extract started
+     */
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractContext [recurse=" + recurse + ", maxDepth=" + maxDepth + ", maxNodes=" + maxNodes
+                + ", typedValues=" + typedValues + "]";
+    }
+}
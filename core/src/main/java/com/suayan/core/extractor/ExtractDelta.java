@@ -0,0 +1,268 @@
+package com.suayan.core.extractor;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The changes since a client's watermark, read from the since request
+ * parameter as epoch millis or an ISO-8601 instant.
+ *
+ * A result node is modified if its cq:lastModified or jcr:lastModified,
+ * on the node or its jcr:content, is not before the watermark, or if the
+ * ChangeJournal saw a change at or below it. A node without any of these
+ * properties is always reported. Removals can not be queried, they come
+ * from the journal as tombstones: records with the path and "deleted"
+ * set to true. A tombstone stands for the removed node and everything
+ * below it.
+ *
+ * A delta is not paged; it is meant to be small.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractDelta {
+
+    public static final String SINCE_PARAM = "since";
+    public static final String PATH_PROPERTY = "path";
+    public static final String DELETED_PROPERTY = "deleted";
+
+    /**
+     * Returned by sinceFromParams() when the request is not a delta.
+     */
+    public static final long NONE = -1;
+
+    private static final String[] MODIFIED_PROPERTIES = { "cq:lastModified", "jcr:lastModified" };
+    private static final String CONTENT = "jcr:content";
+
+    private final long since;
+    private final NavigableSet<String> changedPaths;
+    private final List<String> removedPaths;
+
+    /**
+     * @param since the watermark
+     * @param changedPaths paths added or changed since the watermark
+     * @param removedPaths paths removed since the watermark, oldest first
+     */
+    public ExtractDelta(long since, Collection<String> changedPaths, Collection<String> removedPaths) {
+        this.since = since;
+        this.changedPaths = new TreeSet<String>(changedPaths);
+        this.removedPaths = Collections.unmodifiableList(new ArrayList<String>(removedPaths));
+    }
+
+    /**
+     * @param params
+     * @return the watermark, NONE if the since param is absent
+     * @throws IllegalArgumentException if since is not valid or is combined with paging
+     */
+    public static long sinceFromParams(Map<String, String[]> params) {
+        String[] values = params == null ? null : params.get(SINCE_PARAM);
+        if (values == null || values.length == 0 || StringUtils.isBlank(values[0])) {
+            return NONE;
+        }
+        ExtractPage page = ExtractPage.fromParams(params);
+        if (page.isPaged() || page.getOffset() > 0) {
+            throw new IllegalArgumentException(SINCE_PARAM + " can not be combined with paging.");
+        }
+        String value = values[0].trim();
+        try {
+            long since = StringUtils.isNumeric(value) ? Long.parseLong(value) : Instant.parse(value).toEpochMilli();
+            if (since >= 0) {
+                return since;
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            // reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + SINCE_PARAM + ": " + value);
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * @param rootPath the root path of the query
+     * @return the removed paths at, below or above rootPath
+     */
+    public List<String> getRemovedPaths(String rootPath) {
+        List<String> paths = new ArrayList<String>();
+        for (String path : removedPaths) {
+            if (isSameOrDescendant(path, rootPath) || isSameOrDescendant(rootPath, path)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @param node a result node
+     * @return true if the node or something below it changed since the watermark
+     * @throws RepositoryException
+     */
+    public boolean isModified(Node node) throws RepositoryException {
+        String path = node.getPath();
+        if (changedPaths.contains(path)) {
+            return true;
+        }
+        String below = changedPaths.ceiling(path + "/");
+        if (below != null && below.startsWith(path + "/")) {
+            return true;
+        }
+        boolean dated = false;
+        Node content = node.hasNode(CONTENT) ? node.getNode(CONTENT) : null;
+        for (Node source : new Node[] { node, content }) {
+            if (source == null) {
+                continue;
+            }
+            for (String name : MODIFIED_PROPERTIES) {
+                if (source.hasProperty(name)) {
+                    dated = true;
+                    if (source.getProperty(name).getDate().getTimeInMillis() >= since) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return !dated;
+    }
+
+    /**
+     * @param it the query result
+     * @return the nodes of it that are modified
+     */
+    public NodeIterator filter(NodeIterator it) {
+        return new ModifiedNodeIterator(it);
+    }
+
+    /**
+     * Add a path and a deleted column to a rule based plan, so each record
+     * can be matched with a tombstone. A default extract is left as is.
+     *
+     * @param plan
+     * @return the plan to extract the delta with
+     */
+    public ExtractPlan extend(ExtractPlan plan) {
+        if (plan.isEmpty()) {
+            return plan;
+        }
+        List<ExtractRule> rules = new ArrayList<ExtractRule>(plan.getRules());
+        if (getTarget(plan, ExtractType.PATH) == null) {
+            rules.add(new ExtractRule(PATH_PROPERTY, ExtractType.PATH));
+        }
+        if (getTarget(plan, ExtractType.DELETED) == null) {
+            rules.add(new ExtractRule(DELETED_PROPERTY, ExtractType.DELETED));
+        }
+        return ExtractPlan.compile(rules);
+    }
+
+    /**
+     * @param path the removed path
+     * @param plan the extended plan
+     * @return the tombstone record for path
+     */
+    public ObjectNode tombstone(String path, ExtractPlan plan) {
+        ObjectNode record = JsonNodeFactory.instance.objectNode();
+        record.put(StringUtils.defaultString(getTarget(plan, ExtractType.PATH), PATH_PROPERTY), path);
+        record.put(StringUtils.defaultString(getTarget(plan, ExtractType.DELETED), DELETED_PROPERTY), true);
+        return record;
+    }
+
+    private static String getTarget(ExtractPlan plan, ExtractType type) {
+        for (ExtractRule rule : plan.getRules()) {
+            if (rule.getExtractType() == type) {
+                return rule.getTargetProperty();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestor) {
+        return "/".equals(ancestor) || path.equals(ancestor) || path.startsWith(ancestor + "/");
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractDelta [since=" + since + ", changed=" + changedPaths.size() + ", removed="
+                + removedPaths.size() + "]";
+    }
+
+    /**
+     * Skips the nodes that are not modified.
+     */
+    private final class ModifiedNodeIterator implements NodeIterator {
+
+        private final Logger log = LoggerFactory.getLogger(ExtractDelta.class);
+        private final NodeIterator it;
+        private Node next;
+        private long position = 0;
+
+        private ModifiedNodeIterator(NodeIterator it) {
+            this.it = it;
+        }
+
+        public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+                Node node = it.nextNode();
+                try {
+                    if (isModified(node)) {
+                        next = node;
+                    }
+                } catch (RepositoryException e) {
+                    log.warn("Unable to read the modification date, keeping node: " + e.getMessage());
+                    next = node;
+                }
+            }
+            return next != null;
+        }
+
+        public Node nextNode() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = next;
+            next = null;
+            position++;
+            return node;
+        }
+
+        public Object next() {
+            return nextNode();
+        }
+
+        public void skip(long skipNum) {
+            for (long i = 0; i < skipNum; i++) {
+                nextNode();
+            }
+        }
+
+        public long getSize() {
+            return -1;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.suayan.core.extractor;
+
+/**
+ * Thrown for a delta extract whose watermark is older than the
+ * ChangeJournal, so removals since then may be missing.
+ * The client has to run a full extract and start over from its watermark.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public class ExtractDeltaExpiredException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExtractDeltaExpiredException(long since) {
+        super("Changes since " + since + " are no longer known, run a full extract.");
+    }
+}
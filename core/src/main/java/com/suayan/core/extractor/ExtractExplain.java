@@ -0,0 +1,207 @@
+package com.suayan.core.extractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * How the repository runs the query of an extract, read from the plan
+ * Oak returns for "explain " + statement, and optionally how long the
+ * query and the extraction took when run.
+ *
+ * Oak writes one comment per selector into the plan, naming the index
+ * it picked, such as
+ * <pre>
+ * [cq:Page] as [a] /* lucene:cqPageLucene(/oak:index/cqPageLucene) +:ancestors:/content *&#47;
+ * [nt:base] as [a] /* traverse "/content//*" where ... *&#47;
+ * </pre>
+ * A plan with "traverse" reads nodes one by one instead of an index and
+ * is reported as not covered.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractExplain {
+
+    private static final Pattern SELECTOR_PLAN = Pattern.compile("/\\*\\s*(.*?)\\s*\\*/", Pattern.DOTALL);
+    private static final Pattern COST = Pattern.compile("\\bcost[\\s:=]+([0-9]+(?:\\.[0-9]+)?(?:[eE][+-]?[0-9]+)?)");
+    // index types whose name follows after a space.
+    private static final Set<String> TWO_WORD_TYPES = new HashSet<String>(
+            Arrays.asList("property", "nodeType", "reference", "aggregate", "ordered", "counter"));
+    private static final String TRAVERSE = "traverse";
+
+    private final String statement;
+    private final String language;
+    private final String plan;
+    private final List<String> indexes = new ArrayList<String>();
+    private final List<String> warnings = new ArrayList<String>();
+    private boolean traversal = false;
+    private double cost = -1;
+    private boolean run = false;
+    private long queryMillis = -1;
+    private long extractMillis = -1;
+    private int records = 0;
+    private long scanned = 0;
+    private String truncated = null;
+
+    /**
+     * @param statement the statement as sent, values inlined
+     * @param language
+     * @param plan the plan returned by the repository, null if the EXPLAIN failed
+     */
+    public ExtractExplain(String statement, String language, String plan) {
+        this.statement = statement;
+        this.language = language;
+        this.plan = plan;
+        if (plan == null) {
+            warnings.add("The repository did not return a plan.");
+            return;
+        }
+        Matcher selectors = SELECTOR_PLAN.matcher(plan);
+        while (selectors.find()) {
+            String index = indexOf(selectors.group(1));
+            indexes.add(index);
+            traversal |= TRAVERSE.equals(index);
+        }
+        Matcher costs = COST.matcher(plan);
+        while (costs.find()) {
+            cost = Math.max(0, cost) + Double.parseDouble(costs.group(1));
+        }
+        if (traversal) {
+            warnings.add("The query traverses the repository. Add an Oak index that covers it.");
+        } else if (indexes.isEmpty()) {
+            warnings.add("No index found in the plan.");
+        }
+    }
+
+    /**
+     * @param selectorPlan the text of one plan comment
+     * @return the index part, such as "lucene:cqPageLucene(/oak:index/cqPageLucene)" or "traverse"
+     */
+    private static String indexOf(String selectorPlan) {
+        String[] words = selectorPlan.split("\\s+", 3);
+        if (words.length > 1 && TWO_WORD_TYPES.contains(words[0])) {
+            return words[0] + " " + words[1];
+        }
+        return words[0];
+    }
+
+    public void addWarning(String warning) {
+        warnings.add(warning);
+    }
+
+    /**
+     * Record a run of the extract.
+     * @param queryMillis until the first result node was available
+     * @param extractMillis from the first result node to the last record
+     * @param records the records extracted
+     * @param scanned the result nodes read
+     * @param truncated why the run stopped early, null if it did not
+     */
+    public void setRun(long queryMillis, long extractMillis, int records, long scanned, String truncated) {
+        this.run = true;
+        this.queryMillis = queryMillis;
+        this.extractMillis = extractMillis;
+        this.records = records;
+        this.scanned = scanned;
+        this.truncated = truncated;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the plan of the repository, null if the EXPLAIN failed
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return the index of each selector in order, "traverse" for none
+     */
+    public List<String> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * @return true if a selector reads the repository without an index
+     */
+    public boolean isTraversal() {
+        return traversal;
+    }
+
+    /**
+     * @return true if the plan is known and every selector uses an index
+     */
+    public boolean isCovered() {
+        return plan != null && !traversal && !indexes.isEmpty();
+    }
+
+    /**
+     * @return the estimated cost, if the repository writes it into the plan, -1 otherwise
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    public long getQueryMillis() {
+        return queryMillis;
+    }
+
+    public long getExtractMillis() {
+        return extractMillis;
+    }
+
+    /**
+     * @return the report, with the timings only if the extract was run
+     */
+    public ObjectNode toJson() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("statement", statement);
+        json.put("language", language);
+        json.put("plan", plan);
+        ArrayNode indexList = json.putArray("indexes");
+        for (String index : indexes) {
+            indexList.add(index);
+        }
+        json.put("covered", isCovered());
+        json.put("traversal", traversal);
+        json.put("cost", cost);
+        ArrayNode warningList = json.putArray("warnings");
+        for (String warning : warnings) {
+            warningList.add(warning);
+        }
+        if (run) {
+            json.put("queryMillis", queryMillis);
+            json.put("extractMillis", extractMillis);
+            json.put("records", records);
+            json.put("scanned", scanned);
+            json.put("truncated", truncated);
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractExplain [indexes=" + indexes + ", traversal=" + traversal + ", cost=" + cost + "]";
+    }
+}
@@ -0,0 +1,84 @@
+package com.suayan.core.extractor;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * The output formats of an extract, by request extension.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public enum ExtractFormat {
+    JSON("json", "application/json"),
+    CSV("csv", "text/csv"),
+    NDJSON("ndjson", NdjsonSink.CONTENT_TYPE),
+    COLUMNAR("ccol", ColumnarSink.CONTENT_TYPE);
+
+    private final String extension;
+    private final String contentType;
+
+    private ExtractFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @param extension
+     * @return the format for the extension, JSON if there is none
+     */
+    public static ExtractFormat fromExtension(String extension) {
+        ExtractFormat format = forExtension(extension);
+        return format == null ? JSON : format;
+    }
+
+    /**
+     * @param extension
+     * @return the format for the extension, null if there is none
+     */
+    public static ExtractFormat forExtension(String extension) {
+        if (extension != null) {
+            String lower = extension.toLowerCase(Locale.ENGLISH);
+            for (ExtractFormat format : values()) {
+                if (format.extension.equals(lower)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return false for binary formats, which have no charset
+     */
+    public boolean isText() {
+        return this != COLUMNAR;
+    }
+
+    /**
+     * @param out the stream binary formats write to
+     * @param writer the UTF-8 writer over out that text formats write to
+     * @return the sink writing records in this format
+     */
+    public ExtractSink createSink(OutputStream out, Writer writer) {
+        switch (this) {
+            case CSV:
+                return new CsvRecordSink(writer);
+            case NDJSON:
+                return new NdjsonSink(writer);
+            case COLUMNAR:
+                return new ColumnarSink(out);
+            default:
+                return new JsonArraySink(writer);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.suayan.core.extractor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Records and deep extracts already read while serving one batch
+ * request, so a node matched by several extracts of the batch is read
+ * from the repository once.
+ *
+ * A memo is shared by the threads of one batch and dropped with it, so
+ * it never serves content older than the request. Callers get copies
+ * and may change them. Once full, further results are not kept.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractMemo {
+
+    private final ConcurrentMap<String, ObjectNode> entries = new ConcurrentHashMap<String, ObjectNode>();
+    private final int maxEntries;
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * @param maxEntries the most results kept
+     */
+    public ExtractMemo(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    /**
+     * @param key
+     * @return a copy of the result kept under key, or null
+     */
+    public ObjectNode get(String key) {
+        ObjectNode json = entries.get(key);
+        if (json == null) {
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return json.deepCopy();
+    }
+
+    /**
+     * Keep a copy of json under key.
+     * @param key
+     * @param json
+     */
+    public void put(String key, ObjectNode json) {
+        if (json != null && entries.size() < maxEntries) {
+            entries.putIfAbsent(key, json.deepCopy());
+        }
+    }
+
+    /**
+     * @return the number of results served from the memo
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractMemo [size=" + entries.size() + ", hits=" + hitCount.get() + "]";
+    }
+}
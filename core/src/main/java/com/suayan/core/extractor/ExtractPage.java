@@ -0,0 +1,206 @@
+package com.suayan.core.extractor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * One page of an extract: an offset and a page size, read from the
+ * limit, offset and cursor request parameters.
+ *
+ * A cursor is an opaque token for the page that follows this one.
+ * Clients pass it back as the cursor parameter to resume where the
+ * previous page ended. A cursor is bound to the rendered statement it
+ * was issued for and is rejected for any other.
+ *
+ * A cursor is a keyset cursor when the query can be ordered by path: it
+ * holds the last path of the previous page, and the next page is read
+ * with a path predicate, so each page costs the same however deep into
+ * the result it is. Other queries resume at an offset.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractPage {
+
+    public static final String LIMIT_PARAM = "limit";
+    public static final String OFFSET_PARAM = "offset";
+    public static final String CURSOR_PARAM = "cursor";
+
+    /**
+     * The whole result, unpaged.
+     */
+    public static final ExtractPage ALL = new ExtractPage(0, 0);
+
+    private static final String CURSOR_VERSION = "v2";
+
+    private final long offset;
+    private final long limit;
+    private final String after;
+    private final String statementHash;
+
+    public ExtractPage(long offset, long limit) {
+        this(offset, limit, null, null);
+    }
+
+    private ExtractPage(long offset, long limit, String after, String statementHash) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative.");
+        }
+        if (after != null && offset > 0) {
+            throw new IllegalArgumentException("A cursor can not be combined with an offset.");
+        }
+        this.offset = offset;
+        this.limit = limit;
+        this.after = after;
+        this.statementHash = statementHash;
+    }
+
+    /**
+     * Read the page from request parameters. An explicit limit overrides
+     * the value carried by the cursor.
+     *
+     * @param params
+     * @return the page, ALL when no paging parameter is present
+     * @throws IllegalArgumentException if a parameter is not valid
+     */
+    public static ExtractPage fromParams(Map<String, String[]> params) {
+        if (params == null) {
+            return ALL;
+        }
+        ExtractPage page = ALL;
+        String cursor = getParam(params, CURSOR_PARAM);
+        if (StringUtils.isNotBlank(cursor)) {
+            page = fromCursor(cursor);
+        }
+        long offset = toLong(getParam(params, OFFSET_PARAM), page.offset, OFFSET_PARAM);
+        long limit = toLong(getParam(params, LIMIT_PARAM), page.limit, LIMIT_PARAM);
+        if (offset == page.offset && limit == page.limit) {
+            return page;
+        }
+        return new ExtractPage(offset, limit, page.after, page.statementHash);
+    }
+
+    /**
+     * @param cursor
+     * @return the page the cursor points to
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static ExtractPage fromCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // the path comes last, it may hold a colon.
+            String[] parts = decoded.split(":", 5);
+            if (parts.length == 5 && CURSOR_VERSION.equals(parts[0]) && !parts[1].isEmpty()) {
+                return new ExtractPage(Long.parseLong(parts[3]), Long.parseLong(parts[2]),
+                        StringUtils.defaultIfEmpty(parts[4], null), parts[1]);
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        throw new IllegalArgumentException("Invalid cursor.");
+    }
+
+    /**
+     * @param statement the rendered statement the next page is read with
+     * @return a cursor for this page, bound to statement
+     */
+    public String toCursor(String statement) {
+        String raw = CURSOR_VERSION + ":" + hash(statement) + ":" + limit + ":" + offset + ":"
+                + StringUtils.defaultString(after);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param statement the rendered statement of the request
+     * @throws IllegalArgumentException if the page comes from a cursor issued for another statement
+     */
+    public void checkStatement(String statement) {
+        if (statementHash != null && !statementHash.equals(hash(statement))) {
+            throw new IllegalArgumentException("The cursor was issued for another query.");
+        }
+    }
+
+    /**
+     * @return the page after this one by offset, or null when this page is unbounded
+     */
+    public ExtractPage next() {
+        if (!isPaged()) {
+            return null;
+        }
+        return new ExtractPage(offset + limit, limit);
+    }
+
+    /**
+     * @param path the last path of this page
+     * @return the page of the paths after path, or null when this page is unbounded
+     */
+    public ExtractPage after(String path) {
+        if (!isPaged()) {
+            return null;
+        }
+        return new ExtractPage(0, limit, path, null);
+    }
+
+    /**
+     * @return the path this page starts after, null unless it comes from a keyset cursor
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * @return true if the page has a limit
+     */
+    public boolean isPaged() {
+        return limit > 0;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the page size, 0 for no limit
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    private static String getParam(Map<String, String[]> params, String name) {
+        String[] values = params.get(name);
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        return values[0];
+    }
+
+    private static String hash(String statement) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(StringUtils.defaultString(statement).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static long toLong(String value, long defaultValue, String name) {
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractPage [offset=" + offset + ", limit=" + limit + ", after=" + after + "]";
+    }
+}
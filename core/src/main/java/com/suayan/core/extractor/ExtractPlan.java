@@ -0,0 +1,177 @@
+package com.suayan.core.extractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An immutable, compiled form of a list of ExtractRules.
+ *
+ * Rules are grouped by sourceSubpath (in order of first appearance)
+ * so JsonExtractor resolves each subnode once per result node instead
+ * of once per rule, and reads the properties a group needs in one pass.
+ *
+ * A plan is compiled once per config and can be shared between
+ * extractors and threads.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractPlan {
+
+    private final List<ExtractRule> rules;
+    private final List<Group> groups;
+    private final ExtractRule allRule;
+    private final String signature;
+
+    private ExtractPlan(List<ExtractRule> rules, List<Group> groups, ExtractRule allRule) {
+        this.rules = rules;
+        this.groups = groups;
+        this.allRule = allRule;
+        this.signature = rules.toString();
+    }
+
+    /**
+     * Compile a list of rules into a plan. The rules are copied,
+     * so later changes to them do not affect the plan.
+     *
+     * @param parsedRules
+     * @return
+     */
+    public static ExtractPlan compile(List<ExtractRule> parsedRules) {
+        List<ExtractRule> rules = new ArrayList<ExtractRule>();
+        Map<String, List<ExtractRule>> bySubpath = new LinkedHashMap<String, List<ExtractRule>>();
+        ExtractRule allRule = null;
+        if (parsedRules != null) {
+            for (ExtractRule parsedRule : parsedRules) {
+                if (parsedRule == null) {
+                    continue;
+                }
+                ExtractRule rule = new ExtractRule(parsedRule.getTargetProperty(), parsedRule.getExtractType(),
+                        parsedRule.getSourceSubpath(), parsedRule.getSourceProperty());
+                rule.setMaxDepth(parsedRule.getMaxDepth());
+                rules.add(rule);
+                if (rule.getExtractType() == ExtractType.ALL) {
+                    allRule = rule;
+                    continue;
+                }
+                String subpath = StringUtils.defaultString(rule.getSourceSubpath());
+                List<ExtractRule> grouped = bySubpath.get(subpath);
+                if (grouped == null) {
+                    grouped = new ArrayList<ExtractRule>();
+                    bySubpath.put(subpath, grouped);
+                }
+                grouped.add(rule);
+            }
+        }
+        List<Group> groups = new ArrayList<Group>();
+        for (Map.Entry<String, List<ExtractRule>> entry : bySubpath.entrySet()) {
+            groups.add(new Group(entry.getKey(), entry.getValue()));
+        }
+        return new ExtractPlan(Collections.unmodifiableList(rules), Collections.unmodifiableList(groups), allRule);
+    }
+
+    /**
+     * @return the rules in their original order
+     */
+    public List<ExtractRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the rules grouped by sourceSubpath
+     */
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * An ALL rule seeds each record with the deep jcr:content extract;
+     * the remaining rules are applied on top of it.
+     *
+     * @return the ALL rule or null
+     */
+    public ExtractRule getAllRule() {
+        return allRule;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return a string that is equal for plans with equal rules
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Rules sharing one sourceSubpath.
+     */
+    public static final class Group {
+
+        private final String subpath;
+        private final String relativePath;
+        private final List<ExtractRule> rules;
+        private final String[] propertyNames;
+
+        private Group(String subpath, List<ExtractRule> rules) {
+            this.subpath = subpath;
+            this.relativePath = subpath.startsWith("/") ? subpath.substring(1) : subpath;
+            this.rules = Collections.unmodifiableList(rules);
+            Set<String> names = new LinkedHashSet<String>();
+            for (ExtractRule rule : rules) {
+                switch (rule.getExtractType()) {
+                    case PROPERTY:
+                    case MULTI_PROPERTY:
+                        if (StringUtils.isNotEmpty(rule.getSourceProperty())) {
+                            names.add(rule.getSourceProperty());
+                        }
+                        break;
+                    case TITLE:
+                        names.add("jcr:title");
+                        break;
+                    default:
+                        break;
+                }
+            }
+            this.propertyNames = names.toArray(new String[names.size()]);
+        }
+
+        /**
+         * @return the sourceSubpath as written in the rules
+         */
+        public String getSubpath() {
+            return subpath;
+        }
+
+        /**
+         * @return the subpath relative to the result node, "" for the node itself
+         */
+        public String getRelativePath() {
+            return relativePath;
+        }
+
+        public List<ExtractRule> getRules() {
+            return rules;
+        }
+
+        /**
+         * @return the distinct property names read directly from the subnode
+         */
+        public String[] getPropertyNames() {
+            return propertyNames.clone();
+        }
+
+        String[] propertyNames() {
+            return propertyNames;
+        }
+    }
+}
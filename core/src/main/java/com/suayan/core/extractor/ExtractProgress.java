@@ -0,0 +1,214 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Live counters of a running extract, read by other threads while it
+ * runs: the result nodes scanned, the records emitted and, when the
+ * query result knows its size, the total to scan.
+ * 
+ * An extract is cancelled through its progress: the scan stops at the
+ * next node and the extract ends with what was emitted so far. The scan
+ * also stops once it is over its budget of result nodes or time. Either
+ * way the result is truncated and getTruncatedReason() tells why.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractProgress {
+
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+    private volatile long total = -1;
+    private volatile long startTime = 0;
+    private volatile boolean cancelled = false;
+    private volatile long maxScanned = 0;
+    private volatile long deadline = 0;
+    private volatile String truncatedReason = null;
+    private volatile String nextCursor = null;
+
+    /**
+     * Count the nodes read from the query result, and stop once cancelled.
+     * @param it
+     * @return the tracked iterator
+     */
+    public NodeIterator track(NodeIterator it) {
+        startTime = System.currentTimeMillis();
+        total = it.getSize();
+        return new TrackingNodeIterator(it);
+    }
+
+    /**
+     * Count the records written to sink.
+     * @param sink
+     * @return the tracked sink
+     */
+    public ExtractSink track(final ExtractSink sink) {
+        return new ExtractSink() {
+            public void begin(List<ExtractRule> rules) throws IOException {
+                sink.begin(rules);
+            }
+
+            public void accept(ObjectNode record) throws IOException {
+                sink.accept(record);
+                emitted.incrementAndGet();
+            }
+
+            public void end(String truncated) throws IOException {
+                sink.end(truncated);
+            }
+        };
+    }
+
+    /**
+     * Stop the scan once it has read maxScanned nodes or reached deadline.
+     * @param maxScanned the most result nodes to read, 0 for no limit
+     * @param deadline the time to stop at in epoch millis, 0 for no limit
+     */
+    public void setBudget(long maxScanned, long deadline) {
+        this.maxScanned = Math.max(0, maxScanned);
+        this.deadline = Math.max(0, deadline);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the scan stopped before the end of the query result
+     */
+    public boolean isTruncated() {
+        return truncatedReason != null;
+    }
+
+    /**
+     * @return "cancelled", "maxResults" or "maxMillis" once truncated, null otherwise
+     */
+    public String getTruncatedReason() {
+        return truncatedReason;
+    }
+
+    /**
+     * @param nextCursor the cursor of the page after this one, set before the first record
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the cursor of the next page, null if the extract is not paged or this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the result nodes read so far, before any delta filter
+     */
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    /**
+     * @return the records written so far
+     */
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    /**
+     * @return the size of the query result, -1 if the repository does not know it
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return milliseconds left at the scan rate so far, -1 if it can not be told
+     */
+    public long getEtaMillis() {
+        long done = scanned.get();
+        long size = total;
+        if (size < 0 || done == 0 || startTime == 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        return Math.max(0, elapsed * (size - done) / done);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractProgress [scanned=" + scanned.get() + ", emitted=" + emitted.get() + ", total=" + total
+                + ", cancelled=" + cancelled + ", truncated=" + truncatedReason + "]";
+    }
+
+    /**
+     * Counts the nodes it hands out and ends early once cancelled or over budget.
+     */
+    private final class TrackingNodeIterator implements NodeIterator {
+
+        private final NodeIterator it;
+
+        private TrackingNodeIterator(NodeIterator it) {
+            this.it = it;
+        }
+
+        public boolean hasNext() {
+            if (truncatedReason != null || !it.hasNext()) {
+                return false;
+            }
+            String reason = null;
+            if (cancelled) {
+                reason = "cancelled";
+            } else if (maxScanned > 0 && scanned.get() >= maxScanned) {
+                reason = "maxResults";
+            } else if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                reason = "maxMillis";
+            }
+            truncatedReason = reason;
+            return reason == null;
+        }
+
+        public Node nextNode() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = it.nextNode();
+            scanned.incrementAndGet();
+            return node;
+        }
+
+        public Object next() {
+            return nextNode();
+        }
+
+        public void skip(long skipNum) {
+            it.skip(skipNum);
+            scanned.addAndGet(skipNum);
+        }
+
+        public long getSize() {
+            return it.getSize();
+        }
+
+        public long getPosition() {
+            return it.getPosition();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Recently extracted results, so a dashboard polling the same extract
+ * does not run the query and the extraction on every request.
+ * 
+ * Entries expire after a TTL and are dropped as soon as a resource
+ * change under the root path of their query is observed.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractResultCache {
+    /**
+     * Write a cached result to the sink, begin() and end() included.
+     * @param key
+     * @param rules passed to sink.begin()
+     * @param sink
+     * @return the number of records written, -1 if the result is not cached
+     * @throws IOException if the sink fails to write
+     */
+    public int replay(ExtractResultKey key, List<ExtractRule> rules, ExtractSink sink) throws IOException;
+
+    /**
+     * Wrap a sink so the records written to it are cached under key once
+     * end() is reached. Results that are too large, or that may have
+     * missed a change observed while they were extracted, are not cached.
+     * @param key
+     * @param sink
+     * @return the sink to write the extract to
+     */
+    public ExtractSink record(ExtractResultKey key, ExtractSink sink);
+
+    public void clear();
+}
@@ -0,0 +1,29 @@
+package com.suayan.core.extractor;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Sizing and lifetime of the ExtractResultCache.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Extract Result Cache Configuration", 
+	description = "Sizing and lifetime of cached extract results"
+)
+public @interface ExtractResultCacheConfig {
+	@AttributeDefinition(name = "Enabled", description = "Cache extract results.", type = AttributeType.BOOLEAN)
+	boolean enabled() default true;
+
+	@AttributeDefinition(name = "Max entries", description = "Maximum number of cached results. The least recently used is dropped first.", type = AttributeType.INTEGER)
+	int maxEntries() default 100;
+
+	@AttributeDefinition(name = "Max entry records", description = "Results with more records than this are not cached.", type = AttributeType.INTEGER)
+	int maxEntryRecords() default 5000;
+
+	@AttributeDefinition(name = "TTL", description = "Seconds a result is kept. Bounds staleness for queries outside the observed paths.", type = AttributeType.INTEGER)
+	int ttlSeconds() default 60;
+
+	@AttributeDefinition(name = "Observed paths", description = "Resource changes under these paths invalidate cached results.")
+	String[] resource_paths() default { "/content" };
+}
@@ -0,0 +1,263 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A bounded LRU cache of extract results with a TTL.
+ *
+ * Resource changes under the observed paths (/content by default) drop
+ * every entry whose query root contains the changed path, or is contained
+ * by it. A result is only stored if no change was observed while it was
+ * being extracted, so a result never outlives a change it may have missed.
+ * Counters are exposed over JMX as com.suayan.ccui:type=ExtractResultCache.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(
+    service = { ExtractResultCache.class, ResourceChangeListener.class, DynamicMBean.class },
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED",
+        "jmx.objectname=com.suayan.ccui:type=ExtractResultCache"
+    }
+)
+@Designate(ocd = ExtractResultCacheConfig.class)
+public class ExtractResultCacheImpl extends AnnotatedStandardMBean
+        implements ExtractResultCache, ResourceChangeListener, ExtractResultCacheMBean {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // access ordered, guarded by itself.
+    private final Map<ExtractResultKey, Entry> entries = new LinkedHashMap<ExtractResultKey, Entry>(16, 0.75f, true);
+    // incremented on every observed change.
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private volatile boolean enabled = false;
+    private volatile int maxEntries = 0;
+    private volatile int maxEntryRecords = 0;
+    private volatile long ttlMillis = 0;
+
+    public ExtractResultCacheImpl() throws NotCompliantMBeanException {
+        super(ExtractResultCacheMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(ExtractResultCacheConfig config) {
+        maxEntries = Math.max(0, config.maxEntries());
+        maxEntryRecords = Math.max(0, config.maxEntryRecords());
+        ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, config.ttlSeconds()));
+        enabled = config.enabled() && maxEntries > 0 && ttlMillis > 0;
+        clear();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        enabled = false;
+        clear();
+    }
+
+    public int replay(ExtractResultKey key, List<ExtractRule> rules, ExtractSink sink) throws IOException {
+        if (!enabled) {
+            return -1;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                expirationCount.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return -1;
+        }
+        hitCount.incrementAndGet();
+        sink.begin(rules);
+        for (ObjectNode record : entry.records) {
+            sink.accept(record);
+        }
+        sink.end(null);
+        return entry.records.size();
+    }
+
+    public ExtractSink record(ExtractResultKey key, ExtractSink sink) {
+        if (!enabled) {
+            return sink;
+        }
+        return new RecordingSink(key, sink, generation.get());
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            for (ResourceChange change : changes) {
+                Iterator<ExtractResultKey> keys = entries.keySet().iterator();
+                while (keys.hasNext()) {
+                    ExtractResultKey key = keys.next();
+                    if (key.isAffectedBy(change.getPath())) {
+                        log.debug("Extract result invalidated by {}: {}", change.getPath(), key);
+                        keys.remove();
+                        invalidationCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private void store(ExtractResultKey key, List<ObjectNode> records, long startGeneration) {
+        if (!enabled || generation.get() != startGeneration) {
+            return;
+        }
+        Entry entry = new Entry(Collections.unmodifiableList(records), System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            // a change may have been observed since the check above.
+            if (generation.get() != startGeneration) {
+                return;
+            }
+            entries.put(key, entry);
+            Iterator<ExtractResultKey> eldest = entries.keySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    private static final class Entry {
+        private final List<ObjectNode> records;
+        private final long expires;
+
+        private Entry(List<ObjectNode> records, long expires) {
+            this.records = records;
+            this.expires = expires;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+    }
+
+    /**
+     * Passes records on to the target sink and keeps them until end().
+     */
+    private final class RecordingSink implements ExtractSink {
+
+        private final ExtractResultKey key;
+        private final ExtractSink target;
+        private final long startGeneration;
+        private List<ObjectNode> records = new ArrayList<ObjectNode>();
+
+        private RecordingSink(ExtractResultKey key, ExtractSink target, long startGeneration) {
+            this.key = key;
+            this.target = target;
+            this.startGeneration = startGeneration;
+        }
+
+        public void begin(List<ExtractRule> rules) throws IOException {
+            target.begin(rules);
+        }
+
+        public void accept(ObjectNode record) throws IOException {
+            target.accept(record);
+            if (records != null && record != null) {
+                records.add(record);
+                if (records.size() > maxEntryRecords) {
+                    // too large to cache, stop holding on to it.
+                    records = null;
+                }
+            }
+        }
+
+        public void end(String truncated) throws IOException {
+            target.end(truncated);
+            // a truncated result is not cached.
+            if (records != null && truncated == null) {
+                store(key, records, startGeneration);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.suayan.core.extractor;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the ExtractResultCache.
+ */
+@Description("CCUI extract result cache")
+public interface ExtractResultCacheMBean {
+	@Description("Cached results")
+	int getSize();
+
+	@Description("Maximum number of cached results")
+	int getMaxEntries();
+
+	@Description("Extracts answered from the cache")
+	long getHitCount();
+
+	@Description("Extracts that had to run the query")
+	long getMissCount();
+
+	@Description("Results dropped to make room for new ones")
+	long getEvictionCount();
+
+	@Description("Results dropped because their TTL passed")
+	long getExpirationCount();
+
+	@Description("Results dropped because of a resource change")
+	long getInvalidationCount();
+
+	@Description("Drop all cached results")
+	void clear();
+}
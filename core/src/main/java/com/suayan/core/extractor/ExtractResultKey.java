@@ -0,0 +1,156 @@
+package com.suayan.core.extractor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Identifies one extract result in the ExtractResultCache: the compiled
+ * query and its language, the rules, the page and the traversal limits.
+ *
+ * The key also knows the root path of the query, the deepest path all
+ * results are found under, which decides the resource changes that
+ * invalidate it. A query without a recognizable root has "/" as root.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class ExtractResultKey {
+
+    private static final Pattern SQL2_PATH_CONSTRAINT = Pattern.compile(
+            "IS(?:DESCENDANT|CHILD|SAME)NODE\\s*\\(\\s*(?:[^,()]+,\\s*)?(?:'([^']*)'|\"([^\"]*)\"|\\[([^\\]]*)\\])",
+            Pattern.CASE_INSENSITIVE);
+    private static final String XPATH_ROOT = "/jcr:root";
+
+    private final String statement;
+    private final String language;
+    private final String signature;
+    private final long offset;
+    private final long limit;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final boolean typedValues;
+    private final String rootPath;
+    private final int hash;
+
+    /**
+     * @param statement the compiled query statement
+     * @param language
+     * @param plan
+     * @param page
+     * @param context
+     */
+    public ExtractResultKey(String statement, String language, ExtractPlan plan, ExtractPage page,
+            ExtractContext context) {
+        this.statement = StringUtils.defaultString(statement);
+        this.language = StringUtils.defaultString(language);
+        this.signature = plan.getSignature();
+        this.offset = page.getOffset();
+        this.limit = page.getLimit();
+        this.maxDepth = context.getMaxDepth();
+        this.maxNodes = context.getMaxNodes();
+        this.typedValues = context.isTypedValues();
+        this.rootPath = rootPathOf(this.statement, this.language);
+        int h = this.statement.hashCode();
+        h = 31 * h + this.language.hashCode();
+        h = 31 * h + signature.hashCode();
+        h = 31 * h + (int) (offset ^ (offset >>> 32));
+        h = 31 * h + (int) (limit ^ (limit >>> 32));
+        h = 31 * h + maxDepth;
+        h = 31 * h + maxNodes;
+        h = 31 * h + (typedValues ? 1 : 0);
+        this.hash = h;
+    }
+
+    /**
+     * @return the path all results of the query are found under
+     */
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * @param path a changed resource path
+     * @return true if a change at path can change the result
+     */
+    public boolean isAffectedBy(String path) {
+        if (path == null) {
+            return true;
+        }
+        return isSameOrDescendant(path, rootPath) || isSameOrDescendant(rootPath, path);
+    }
+
+    /**
+     * @param statement
+     * @param language
+     * @return the common root of the path constraints in the query, "/" if there are none
+     */
+    public static String rootPathOf(String statement, String language) {
+        String root = null;
+        if ("xpath".equalsIgnoreCase(language)) {
+            String trimmed = statement.trim();
+            if (trimmed.startsWith(XPATH_ROOT + "/")) {
+                String path = trimmed.substring(XPATH_ROOT.length());
+                int end = path.length();
+                for (String stop : new String[] { "//", "/element(", "[", "*", "(", " " }) {
+                    int index = path.indexOf(stop);
+                    if (index >= 0 && index < end) {
+                        end = index;
+                    }
+                }
+                root = path.substring(0, end);
+            }
+        } else {
+            Matcher matcher = SQL2_PATH_CONSTRAINT.matcher(statement);
+            while (matcher.find()) {
+                String path = matcher.group(1) != null ? matcher.group(1)
+                        : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                root = root == null ? path : commonAncestor(root, path);
+            }
+        }
+        root = StringUtils.removeEnd(root, "/");
+        return StringUtils.isEmpty(root) || !root.startsWith("/") ? "/" : root;
+    }
+
+    private static String commonAncestor(String a, String b) {
+        String[] left = a.split("/");
+        String[] right = b.split("/");
+        StringBuilder common = new StringBuilder();
+        for (int i = 1; i < left.length && i < right.length && left[i].equals(right[i]); i++) {
+            common.append('/').append(left[i]);
+        }
+        return common.toString();
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestor) {
+        return "/".equals(ancestor) || path.equals(ancestor) || path.startsWith(ancestor + "/");
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ExtractResultKey)) {
+            return false;
+        }
+        ExtractResultKey other = (ExtractResultKey) obj;
+        return hash == other.hash && offset == other.offset && limit == other.limit
+                && maxDepth == other.maxDepth && maxNodes == other.maxNodes
+                && typedValues == other.typedValues
+                && statement.equals(other.statement) && language.equals(other.language)
+                && signature.equals(other.signature);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractResultKey [rootPath=" + rootPath + ", statement=" + statement + ", offset=" + offset
+                + ", limit=" + limit + "]";
+    }
+}
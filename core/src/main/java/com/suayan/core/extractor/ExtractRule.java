@@ -12,6 +12,7 @@ public class ExtractRule {
     private String sourceProperty;    
     private String targetProperty;
     private ExtractType extractType;
+    private int maxDepth = ExtractContext.UNLIMITED;
 
     public ExtractRule(String targetProperty, ExtractType eType) {
         this.extractType = eType;
@@ -88,6 +89,21 @@ public class ExtractRule {
         return extractType;
     }
 
+    /**
+     * @return levels of children a deep extract by this rule may read,
+     *         ExtractContext.UNLIMITED for no limit of its own
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    /**
+     * Only applies to ALL, OBJECT_LIST and OBJECT_MAP rules.
+     * @param maxDepth the maxDepth to set
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(ExtractContext.UNLIMITED, maxDepth);
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -95,6 +111,7 @@ public class ExtractRule {
     public String toString() {
         return "ExtractRule [sourceSubpath=" + sourceSubpath
                 + ", sourceProperty=" + sourceProperty + ", targetProperty="
-                + targetProperty + ", extractType=" + extractType + "]";
+                + targetProperty + ", extractType=" + extractType
+                + ", maxDepth=" + maxDepth + "]";
     }
 }
\ No newline at end of file
@@ -26,6 +26,9 @@ import org.json.JSONObject;
  * object-list: create a JSON Array of anonymous objects
  * object-map: create an associative map of JSONObjects using node name as key
  * 
+ * object-list and object-map rules take an optional "maxDepth", the levels
+ * of children read below each object.
+ * 
  * @author Kyo Suayan
  *
  */
@@ -56,6 +59,14 @@ public class ExtractRulesParser {
         }
         return parsedRules;
     }
+
+    /**
+     * Parse the rules and compile them into an immutable ExtractPlan.
+     * @return
+     */
+    public ExtractPlan compileExtractPlan() {
+        return ExtractPlan.compile(parseExtractRules());
+    }
     
     private ExtractRule convert(JSONObject rule) {
         if (rule == null) {
@@ -109,6 +120,9 @@ public class ExtractRulesParser {
 
                     break;
             }
+            if (parsedRule != null && rule.has("maxDepth")) {
+                parsedRule.setMaxDepth(rule.getInt("maxDepth"));
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,39 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Receives extracted records one at a time while a query result
+ * is being walked, so callers never have to hold the full result.
+ * 
+ * begin() is called once before the first record with the rules that
+ * will produce each record (empty for a default extract), and end() once
+ * after the last one, even when the query returned nothing.
+ * 
+ * end() gets the reason an extract stopped early (see ExtractProgress),
+ * so a sink writing to a client can mark a truncated result in the body
+ * itself: the response headers may be sent long before the extract ends.
+ * Text formats add a trailer with the TRUNCATED field.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractSink {
+
+    /**
+     * The field of the trailer that marks a truncated result.
+     */
+    public static final String TRUNCATED = "@truncated";
+
+    public void begin(List<ExtractRule> rules) throws IOException;
+    public void accept(ObjectNode record) throws IOException;
+
+    /**
+     * @param truncated why the result was cut short, null if it is complete
+     * @throws IOException
+     */
+    public void end(String truncated) throws IOException;
+}
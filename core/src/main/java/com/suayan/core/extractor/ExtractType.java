@@ -1,5 +1,5 @@
 package com.suayan.core.extractor;
 
 public enum ExtractType {
-    PROPERTY, MULTI_PROPERTY, OBJECT_LIST, OBJECT_MAP, NAME, TITLE, PATH, ALL, PROPERTY_FROM_CHILDREN
+    PROPERTY, MULTI_PROPERTY, OBJECT_LIST, OBJECT_MAP, NAME, TITLE, PATH, ALL, PROPERTY_FROM_CHILDREN, DELETED
 }
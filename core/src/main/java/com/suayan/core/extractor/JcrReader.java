@@ -12,4 +12,17 @@ public interface JcrReader {
     public void setFilepath(String filepath);
     public String readToString();
     public Reader getReaderFromJcrFile();
+    /**
+     * Read the file at filepath without touching the current filepath,
+     * with a session of its own.
+     * @param filepath
+     * @return the contents or "" if the file could not be read
+     */
+    public String readToString(String filepath);
+    /**
+     * Read the current jcr:lastModified with a session of its own.
+     * @param filepath
+     * @return jcr:lastModified of the file in millis, or -1 if unknown
+     */
+    public long getLastModified(String filepath);
 }
\ No newline at end of file
@@ -19,9 +19,16 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.suayan.core.services.SessionPool;
+
 /**
  * A simple JCR text file reader.
  * 
+ * The filepath based methods read through one long lived session. The
+ * stateless readToString(path) and getLastModified(path), which are
+ * called from concurrent requests, borrow a session of their own from
+ * the SessionPool, as a session must not be shared between threads.
+ * 
  * @author Kyo Suayan
  *
  */
@@ -31,6 +38,9 @@ public class JcrTextReader implements JcrReader {
     @Reference
     private SlingRepository repository;
 
+    @Reference
+    private SessionPool sessionPool;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private Session session = null;
@@ -65,9 +75,46 @@ public class JcrTextReader implements JcrReader {
     }
 
     public String readToString() {
+        return read(getReader(rootNode, filepath));
+    }
+
+    public String readToString(String filepath) {
+        Session pooled = null;
+        try {
+            pooled = sessionPool.borrow();
+            return read(getReader(pooled.getRootNode(), filepath));
+        } catch (RepositoryException e) {
+            log.error("RepositoryException in readToString " + e.getMessage());
+        } finally {
+            sessionPool.release(pooled);
+        }
+        return "";
+    }
+
+    public Reader getReaderFromJcrFile() {
+        return getReader(rootNode, filepath);
+    }
+
+    public long getLastModified(String filepath) {
+        Session pooled = null;
+        try {
+            // a pooled session is refreshed before it is lent out.
+            pooled = sessionPool.borrow();
+            Node fileContent = pooled.getRootNode().getNode(filepath).getNode("jcr:content");
+            if (fileContent.hasProperty("jcr:lastModified")) {
+                return fileContent.getProperty("jcr:lastModified").getDate().getTimeInMillis();
+            }
+        } catch (RepositoryException e) {
+            log.error("RepositoryException in getLastModified " + e.getMessage());
+        } finally {
+            sessionPool.release(pooled);
+        }
+        return -1;
+    }
+
+    private String read(Reader fileReader) {
         StringBuilder sb = new StringBuilder();
         try {
-            Reader fileReader = getReaderFromJcrFile();
             if (fileReader != null) {
                 BufferedReader in = new BufferedReader(fileReader);
                 String line;
@@ -88,7 +135,7 @@ public class JcrTextReader implements JcrReader {
         return sb.toString();
     }
 
-    public Reader getReaderFromJcrFile() {
+    private Reader getReader(Node rootNode, String filepath) {
         Reader reader = null;
         try {
             Node fileContent = rootNode.getNode(filepath).getNode("jcr:content");
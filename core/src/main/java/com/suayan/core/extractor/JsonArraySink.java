@@ -0,0 +1,77 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Stream extracted records to a Writer as a JSON array.
+ * 
+ * Each record tree is written straight to the generator as soon as it
+ * is accepted, without an intermediate string, so heap use does not
+ * grow with the size of the result. The opening bracket is deferred until
+ * the first record arrives; an empty result is written as the usual
+ * "No results found." error object instead of an empty array.
+ * 
+ * A truncated result ends with a trailer record {"@truncated": reason},
+ * or carries the field in the error object when it is empty.
+ * 
+ * The underlying Writer is flushed but not closed by end().
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public class JsonArraySink implements ExtractSink {
+
+    private final Writer writer;
+    private JsonGenerator generator = null;
+    private int count = 0;
+
+    public JsonArraySink(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void begin(List<ExtractRule> rules) throws IOException {
+        generator = JsonGenerators.open(writer);
+    }
+
+    public void accept(ObjectNode record) throws IOException {
+        if (record == null) {
+            return;
+        }
+        if (count == 0) {
+            generator.writeStartArray();
+        }
+        generator.writeTree(record);
+        count++;
+    }
+
+    public void end(String truncated) throws IOException {
+        if (count == 0) {
+            generator.writeStartObject();
+            generator.writeStringField("error", "No results found.");
+            if (truncated != null) {
+                generator.writeStringField(TRUNCATED, truncated);
+            }
+            generator.writeEndObject();
+        } else {
+            if (truncated != null) {
+                generator.writeStartObject();
+                generator.writeStringField(TRUNCATED, truncated);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public int getCount() {
+        return count;
+    }
+}
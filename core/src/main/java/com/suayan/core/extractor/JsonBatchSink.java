@@ -0,0 +1,89 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Stream the results of a batch to a Writer as one JSON object with a
+ * field per extract name. A result is a JSON array of its records, an
+ * empty array if there are none; a failed extract is an error object:
+ * 
+ * {"pages": [{...}, {...}], "types": [], "broken": {"error": "..."}}
+ * 
+ * Each result is flushed as soon as it is complete. The underlying Writer
+ * is flushed but not closed by end().
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public class JsonBatchSink implements ExtractBatchSink {
+
+    private final Writer writer;
+    private JsonGenerator generator = null;
+
+    public JsonBatchSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    public ExtractSink open(String name) throws IOException {
+        start();
+        return new ResultSink(name);
+    }
+
+    public void error(String name, String message) throws IOException {
+        start();
+        generator.writeObjectFieldStart(name);
+        generator.writeStringField("error", message);
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    public void end() throws IOException {
+        start();
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    private void start() throws IOException {
+        if (generator == null) {
+            generator = JsonGenerators.open(writer);
+            generator.writeStartObject();
+        }
+    }
+
+    /**
+     * Writes one result as the value of the field opened for it.
+     */
+    private final class ResultSink implements ExtractSink {
+
+        private final String name;
+
+        private ResultSink(String name) {
+            this.name = name;
+        }
+
+        public void begin(List<ExtractRule> rules) throws IOException {
+            generator.writeArrayFieldStart(name);
+        }
+
+        public void accept(ObjectNode record) throws IOException {
+            if (record != null) {
+                generator.writeTree(record);
+            }
+        }
+
+        public void end(String truncated) throws IOException {
+            if (truncated != null) {
+                generator.writeStartObject();
+                generator.writeStringField(TRUNCATED, truncated);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.flush();
+        }
+    }
+}
@@ -1,49 +1,85 @@
 package com.suayan.core.extractor;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
 
 import org.apache.commons.lang3.StringUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.suayan.core.utils.Utils;
 
 /**
- * Extract a JSONObject from a Node with a list of ExtractRules.
+ * Extract a Jackson ObjectNode from a Node with a list of ExtractRules.
  * 
  * A JsonExtractor object is initialized with a @javax.jcr.Session object.
  * You can then programmatically provide it with a List of ExtractRules
  * that will be used to process each JCR Node in getJsonObject().
  * 
+ * The ExtractContext of the request it works for is fixed at construction,
+ * so an extractor can be used by one thread without touching shared state.
+ * Deep extracts (ALL, OBJECT_LIST, OBJECT_MAP and getJsonObject(path))
+ * are limited by the context's maxDepth and maxNodes and by the rule's
+ * own maxDepth, whichever is tighter. Within a batch, records and deep
+ * extracts are taken from the context's ExtractMemo when another extract
+ * of the batch already read them.
+ * 
  * @author Kyo Suayan
  *
  */
 public class JsonExtractor {
 
     private List<ExtractRule> rules = null;
+    private ExtractPlan plan = null;
     private Session session = null;
+    private final ExtractContext context;
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     public JsonExtractor(Session session) {
+        this(session, null, null);
+    }
+
+    /**
+     * Use a precompiled plan. Rules added later are compiled into a new plan.
+     * @param session
+     * @param plan
+     */
+    public JsonExtractor(Session session, ExtractPlan plan) {
+        this(session, plan, null);
+    }
+
+    /**
+     * Use a precompiled plan within the context of one extract.
+     * @param session
+     * @param plan
+     * @param context null for ExtractContext.defaults()
+     */
+    public JsonExtractor(Session session, ExtractPlan plan, ExtractContext context) {
         super();
         this.session = session;
         this.rules = new ArrayList<ExtractRule>();
+        this.context = context != null ? context : ExtractContext.defaults();
+        if (plan != null) {
+            this.rules.addAll(plan.getRules());
+            this.plan = plan;
+        }
     }
     
     /**
@@ -52,6 +88,7 @@ public class JsonExtractor {
      */
     public void addRule(ExtractRule rule) {
         this.rules.add(rule);
+        this.plan = null;
     }
 
     /**
@@ -61,123 +98,254 @@ public class JsonExtractor {
     public void addRules(List<ExtractRule> parsedRules) {
         if (parsedRules!=null) {
             rules.addAll(parsedRules);
+            this.plan = null;
+        }
+    }
+
+    /**
+     * @return the context of the extract this extractor works for
+     */
+    public ExtractContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the compiled plan for the current rules
+     */
+    public ExtractPlan getPlan() {
+        if (plan == null) {
+            plan = ExtractPlan.compile(rules);
         }
+        return plan;
     }
     
     /**
      * Apply all applicable rules to this node.
-     * Pass in the destination JSONObject
+     * Pass in the destination ObjectNode
      * and return the updated version.
      * 
+     * Each sourceSubpath in the plan is resolved once relative to the node
+     * and the properties its rules need are read in a single pass.
+     * 
      * @param node
      * @param jsonObject
      * @return
      */
-    public JSONObject getJsonObject(Node node, JSONObject jsonObject) {
+    public ObjectNode getJsonObject(Node node, ObjectNode jsonObject) {
         if (node == null)
             return null;
-        int size = this.rules.size();
-        if (size > 0) {
-            for (ExtractRule rule : this.rules) {
-                jsonObject = this.processRule(node, rule, jsonObject);
+        ExtractPlan currentPlan = getPlan();
+        ExtractMemo memo = context.getMemo();
+        String memoKey = null;
+        if (memo != null && jsonObject != null && jsonObject.size() == 0) {
+            memoKey = memoKey(node, currentPlan.getSignature());
+            ObjectNode memoized = memoKey == null ? null : memo.get(memoKey);
+            if (memoized != null) {
+                return memoized;
             }
         }
+        if (currentPlan.getAllRule() != null) {
+            jsonObject = getContentObject(node, currentPlan.getAllRule().getMaxDepth(), jsonObject);
+        }
+        for (ExtractPlan.Group group : currentPlan.getGroups()) {
+            Node source = resolve(node, group.getRelativePath());
+            Map<String, Property> properties = readProperties(source, group.propertyNames());
+            for (ExtractRule rule : group.getRules()) {
+                this.processRule(node, source, properties, rule, jsonObject);
+            }
+        }
+        if (memoKey != null) {
+            memo.put(memoKey, jsonObject);
+        }
         return jsonObject;
     }
 
     /**
      * Apply the ExtractRule to the node.
-     * @param node
+     * @param node the result node
+     * @param source the node at the rule's sourceSubpath, null if missing
+     * @param properties properties already read from source
      * @param rule
      * @param jsonObject
-     * @return
      */
-    private JSONObject processRule(Node node, ExtractRule rule, JSONObject jsonObject) {
+    private void processRule(Node node, Node source, Map<String, Property> properties, ExtractRule rule,
+            ObjectNode jsonObject) {
 
-        String sourceProperty = rule.getSourceProperty();
-        String sourceSubpath = rule.getSourceSubpath();        
         String targetProperty = rule.getTargetProperty();
         try {
-            String nodePath = node.getPath();
-            String nodeName = node.getName();
-            String fullPath = nodePath + sourceSubpath;           
             switch (rule.getExtractType()) {
                 case PROPERTY:
-                    jsonObject.put(targetProperty, getProperty(fullPath, sourceProperty));
+                    if (context.isTypedValues()) {
+                        putProperty(jsonObject, targetProperty, properties.get(rule.getSourceProperty()));
+                    } else {
+                        jsonObject.put(targetProperty, getProperty(properties.get(rule.getSourceProperty())));
+                    }
                     break;
                 case MULTI_PROPERTY:
-                    jsonObject.put(targetProperty, getMultiProperty(fullPath, sourceProperty));
+                    putIfNotNull(jsonObject, targetProperty, getMultiProperty(properties.get(rule.getSourceProperty())));
                     break;
                 case PROPERTY_FROM_CHILDREN:
-                    jsonObject.put(targetProperty, getPropertyFromChildren(node, sourceSubpath, sourceProperty));
+                    jsonObject.put(targetProperty, getPropertyFromChildren(source, rule.getSourceProperty()));
                     break;
                 case OBJECT_LIST:
-                    jsonObject.put(targetProperty, getJsonArray(fullPath));
+                    putIfNotNull(jsonObject, targetProperty, getJsonArray(source, rule.getMaxDepth()));
                     break;
                 case OBJECT_MAP:
-                    jsonObject.put(targetProperty, getJsonMap(fullPath));
+                    putIfNotNull(jsonObject, targetProperty, getJsonMap(source, rule.getMaxDepth()));
                     break;
                 case TITLE:
-                    jsonObject.put(targetProperty, getProperty(fullPath, "jcr:title"));
+                    jsonObject.put(targetProperty, getProperty(properties.get("jcr:title")));
                     break;
                 case NAME:
-                    jsonObject.put(targetProperty, nodeName);
+                    jsonObject.put(targetProperty, node.getName());
                     break;
                 case PATH:
-                    jsonObject.put(targetProperty, nodePath);
+                    jsonObject.put(targetProperty, node.getPath());
                     break;
-                case ALL:                    
-                    JSONObject tempJson = getJsonMap(fullPath);
-                    if (tempJson != null && tempJson.has("jcr:content")) {
-                        jsonObject = tempJson.getJSONObject("jcr:content");
-                    }
+                case DELETED:
+                    jsonObject.put(targetProperty, false);
+                    break;
+                default:
                     break;
             }
         } catch (Exception e) {
             log.error(">>> error: " + e.getMessage());
         }
-        return jsonObject;
     }
-       
-    private String getProperty(String path, String prop) {
-        String result = "";
+
+    /**
+     * Deep extract of the node's jcr:content, used for ExtractType.ALL.
+     * @param node
+     * @param maxDepth the rule's own depth limit
+     * @param jsonObject returned unchanged if there is no jcr:content
+     * @return
+     */
+    private ObjectNode getContentObject(Node node, int maxDepth, ObjectNode jsonObject) {
+        Node content = resolve(node, "jcr:content");
+        if (content == null) {
+            return jsonObject;
+        }
+        ObjectNode contentJson = deepExtract(content, maxDepth);
+        return contentJson != null ? contentJson : jsonObject;
+    }
+
+    /**
+     * A missing value leaves the key out of the record.
+     */
+    private void putIfNotNull(ObjectNode jsonObject, String key, String value) {
+        if (value != null) {
+            jsonObject.put(key, value);
+        }
+    }
+
+    private void putIfNotNull(ObjectNode jsonObject, String key, JsonNode value) {
+        if (value != null) {
+            jsonObject.set(key, value);
+        }
+    }
+
+    /**
+     * Resolve a path relative to node.
+     * @param node
+     * @param relativePath "" for the node itself
+     * @return the node or null if it does not exist
+     */
+    private Node resolve(Node node, String relativePath) {
+        if (StringUtils.isEmpty(relativePath)) {
+            return node;
+        }
         try {
-            Node node = session.getNode(path);
-            if (node != null) {
-                Property p = node.getProperty(prop);
-                if (p != null) {
-                    return p.getValue().getString().replaceAll("\"", "").trim();
-                }
+            return node.getNode(relativePath);
+        } catch (RepositoryException ignored) {
+        }
+        return null;
+    }
+
+    /**
+     * Read the named properties of node in one pass.
+     * @param node
+     * @param names
+     * @return property name to Property, empty if node is null
+     */
+    private Map<String, Property> readProperties(Node node, String[] names) {
+        if (node == null || names.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, Property> properties = new HashMap<String, Property>();
+        try {
+            PropertyIterator it = node.getProperties(names);
+            while (it.hasNext()) {
+                Property property = it.nextProperty();
+                properties.put(property.getName(), property);
             }
         } catch (RepositoryException ignored) {
         }
+        return properties;
+    }
+
+    /**
+     * Put the value of a single-valued property with its JCR type, as
+     * Utils.convertNodeToJson does: booleans, longs and doubles stay
+     * typed and dates are epoch millis. Other values are strings, and a
+     * missing property is "". Only used for a TypedExtractSink.
+     */
+    private void putProperty(ObjectNode jsonObject, String key, Property p) {
+        if (p != null) {
+            try {
+                if (!p.isMultiple()) {
+                    switch (p.getType()) {
+                        case PropertyType.BOOLEAN:
+                            jsonObject.put(key, p.getBoolean());
+                            return;
+                        case PropertyType.LONG:
+                            jsonObject.put(key, p.getLong());
+                            return;
+                        case PropertyType.DOUBLE:
+                            jsonObject.put(key, p.getDouble());
+                            return;
+                        case PropertyType.DATE:
+                            jsonObject.put(key, p.getDate().getTimeInMillis());
+                            return;
+                        default:
+                            break;
+                    }
+                }
+            } catch (RepositoryException ignored) {
+            }
+        }
+        jsonObject.put(key, getProperty(p));
+    }
+
+    private String getProperty(Property p) {
+        String result = "";
+        if (p != null) {
+            try {
+                return p.getValue().getString().replace("\"", "").trim();
+            } catch (RepositoryException ignored) {
+            }
+        }
         return result;
     }
     
-    private String getMultiProperty(String path, String propertyName) {
-        if (path == null)
-            return null;
-
+    private String getMultiProperty(Property prop) {
         String result = null;
-        try {
-            Node node = session.getNode(path);
-            if (node != null) {
-                Property prop = node.getProperty(propertyName);
-                if (prop != null) {
-                    if (prop.isMultiple()) {
-                        Value[] valueList = prop.getValues();
-                        StringBuilder values = new StringBuilder();
-                        for (Value eachValue : valueList) {
-                            values.append(eachValue.getString()).append(" | ");
+        if (prop != null) {
+            try {
+                if (prop.isMultiple()) {
+                    Value[] valueList = prop.getValues();
+                    StringBuilder values = new StringBuilder();
+                    for (Value eachValue : valueList) {
+                        if (values.length() > 0) {
+                            values.append(" | ");
                         }
-                        result = values.toString().replaceAll(" \\| $", "").trim();
-
-                    } else {
-                        result = prop.getString();
+                        values.append(eachValue.getString());
                     }
-                }                           
+                    result = values.toString().trim();
+                } else {
+                    result = prop.getString();
+                }
+            } catch (IllegalStateException | RepositoryException ignored) {
             }
-        } catch (IllegalStateException | RepositoryException ignored) {
         }
         return result;
     }
@@ -185,45 +353,47 @@ public class JsonExtractor {
     /**
      * Used to fetch value of a property from the child nodes
      *
-     * @param sourceNode source node
-     * @param subPath subpath to the child nodes
+     * @param subNode the node at the rule's subpath
      * @param propertyName name of the property
      * @return value (Pipe Separated) of same property from all the children under the subPath node.
      */
-    private String getPropertyFromChildren(Node sourceNode, String subPath, String propertyName) {
-        if (subPath == null)
-            return null;
-        String value = null;
-        try {
-            if (sourceNode != null) {
-                if(subPath.startsWith("/"))
-                    subPath = subPath.replaceFirst("/","");
-
-                value = StringUtils.join(Utils.getSamePropertyFromAllSubNodes(sourceNode, subPath, propertyName), " | ");
+    private String getPropertyFromChildren(Node subNode, String propertyName) {
+        List<String> values = new ArrayList<String>();
+        if (subNode != null) {
+            try {
+                NodeIterator it = subNode.getNodes();
+                while (it.hasNext()) {
+                    Node childNode = it.nextNode();
+                    if (childNode.hasProperty(propertyName)) {
+                        values.add(childNode.getProperty(propertyName).getString());
+                    }
+                }
+            } catch (RepositoryException e) {
+                log.error(e.getMessage());
             }
-        } catch (IllegalStateException ignored) {
         }
-        return value;
+        return StringUtils.join(values, " | ");
     }
     
     /**
-     * Get a JSONArray of child nodes from a path.
-     * @param path
+     * Get an ArrayNode of child nodes from a node.
+     * @param node
+     * @param maxDepth the rule's own depth limit for each child
      * @return
      */
-    private JSONArray getJsonArray(String path) {
-        if (path == null)
+    private ArrayNode getJsonArray(Node node, int maxDepth) {
+        if (node == null)
             return null;        
-        JSONArray values = null;
+        ArrayNode values = null;
         try {
-            Node node = session.getNode(path);
             NodeIterator it = node.getNodes();
             if (it!=null) {
-                values = new JSONArray();
+                values = JsonNodeFactory.instance.arrayNode();
                 while (it.hasNext()) {
-                    Node childNode = (Node) it.next();
-                    JSONObject jsonObj = Utils.toJsonObject(getJsonObject(childNode.getPath()));
-                    values.put(jsonObj);
+                    ObjectNode child = deepExtract(it.nextNode(), maxDepth);
+                    if (child != null) {
+                        values.add(child);
+                    }
                 }                
             }
         } catch (IllegalStateException | RepositoryException ignored) {
@@ -232,32 +402,35 @@ public class JsonExtractor {
     }
     
     /**
-     * Get a JSONArray of child nodes from a path
+     * Get an ObjectNode of child nodes from a node
      * using node names as key.
-     * @param path
+     * @param node
+     * @param maxDepth the rule's own depth limit for each child
      * @return
      */
-    private JSONObject getJsonMap(String path) {
-        if (path == null)
+    private ObjectNode getJsonMap(Node node, int maxDepth) {
+        if (node == null)
             return null;        
-        JSONObject values = new JSONObject();
+        ObjectNode values = JsonNodeFactory.instance.objectNode();
         try {
-            Node node = session.getNode(path);
             NodeIterator it = node.getNodes();
             if (it!=null) {
                 while (it.hasNext()) {
-                    Node childNode = (Node) it.next();
-                    JSONObject jsonObj = Utils.toJsonObject(getJsonObject(childNode.getPath()));
-                    values.put(childNode.getName(), jsonObj);
+                    Node childNode = it.nextNode();
+                    ObjectNode child = deepExtract(childNode, maxDepth);
+                    if (child != null) {
+                        values.set(childNode.getName(), child);
+                    }
                 }
             }
-        } catch (JSONException | RepositoryException | IllegalStateException ignored) {
+        } catch (RepositoryException | IllegalStateException ignored) {
         }
         return values;
     }
     
     /**
-     * Use JsonJcrNode to perform deep traversal of JCR tree for path.
+     * Deep traversal of the JCR tree for path, within the limits
+     * of the context.
      * @param path
      * @return
      */
@@ -265,33 +438,72 @@ public class JsonExtractor {
         if (path == null) {
             return null;
         }
-        ObjectNode jsonObj = null;
         try {
-            Node node = session.getNode(path);
-            // Convert the JCR Node to ObjectNode, excluding rejected keys
-            jsonObj = Utils.convertNodeToJson(node, getRejectedKeys());
-            // Traverse child nodes
-            NodeIterator it = node.getNodes();
-            if (it != null) {
-                while (it.hasNext()) {
-                    Node childNode = it.nextNode();
-                    ObjectNode childJson = getJsonObject(childNode.getPath());
-                    jsonObj.set(childNode.getName(), childJson); // Use set to add child ObjectNode
+            return deepExtract(session.getNode(path), ExtractContext.UNLIMITED);
+        } catch (RepositoryException e) {
+            log.error("Error retrieving node at path: " + path, e);
+        }
+        return null;
+    }
+
+    /**
+     * Deep traversal of the JCR tree below node, within the limits
+     * of the context.
+     * @param node
+     * @return
+     */
+    public ObjectNode getJsonObject(Node node) {
+        if (node == null) {
+            return null;
+        }
+        return deepExtract(node, ExtractContext.UNLIMITED);
+    }
+
+    /**
+     * @param node
+     * @param maxDepth the rule's own depth limit, UNLIMITED for none
+     * @return the deep extract of node, or null if it cannot be read
+     */
+    private ObjectNode deepExtract(Node node, int maxDepth) {
+        int depth = ExtractContext.limit(maxDepth, context.getMaxDepth());
+        NodeTraverser traverser = new NodeTraverser(depth, context.getMaxNodes());
+        ExtractMemo memo = context.getMemo();
+        try {
+            String memoKey = null;
+            if (memo != null) {
+                memoKey = memoKey(node, String.valueOf(depth));
+                ObjectNode memoized = memoKey == null ? null : memo.get(memoKey);
+                if (memoized != null) {
+                    return memoized;
                 }
             }
+            ObjectNode json = traverser.traverse(node);
+            if (traverser.isTruncated()) {
+                log.debug("Deep extract truncated at {} nodes: {}", context.getMaxNodes(), node.getPath());
+            }
+            if (memoKey != null) {
+                memo.put(memoKey, json);
+            }
+            return json;
         } catch (RepositoryException e) {
-            log.error("Error retrieving node at path: " + path, e);
+            log.error("Error extracting node: " + e.getMessage(), e);
         }
-        return jsonObj;
+        return null;
     }
 
-    private Set<String> getRejectedKeys() {
-        Set<String> rejects = new HashSet<String>();
-        rejects.add("jcr:path");
-        rejects.add("jcr:name");
-        rejects.add("jcr:primaryType");
-        rejects.add("jcr:created");        
-        rejects.add("jcr:createdBy");
-        return rejects;
-   }
-}
\ No newline at end of file
+    /**
+     * The key includes the context's limits, so extracts of a batch with
+     * other limits never share a result.
+     * @param node
+     * @param variant what else the result depends on
+     * @return the memo key of the result for node, null if it has no path
+     */
+    private String memoKey(Node node, String variant) {
+        try {
+            return node.getPath() + "|" + variant + "|" + context.getMaxDepth() + ":" + context.getMaxNodes()
+                    + (context.isTypedValues() ? "|typed" : "");
+        } catch (RepositoryException ignored) {
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Opens the generators of the JSON sinks.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+final class JsonGenerators {
+
+    // The factory of an ObjectMapper can write Jackson trees.
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    private JsonGenerators() {
+    }
+
+    /**
+     * @param writer
+     * @return a generator over writer that leaves it open when closed
+     * @throws IOException
+     */
+    static JsonGenerator open(Writer writer) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+}
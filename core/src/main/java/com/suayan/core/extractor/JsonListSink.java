@@ -0,0 +1,40 @@
+package com.suayan.core.extractor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * An ExtractSink that collects records into a List.
+ * Used by the list based ScannerService methods.
+ * 
+ * The records are copied, since the caller may change them and an
+ * accepted record can be shared with the ExtractResultCache.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public class JsonListSink implements ExtractSink {
+
+    private final List<ObjectNode> records = new ArrayList<ObjectNode>();
+
+    public void begin(List<ExtractRule> rules) {
+    }
+
+    public void accept(ObjectNode record) {
+        if (record != null) {
+            records.add(record.deepCopy());
+        }
+    }
+
+    public void end(String truncated) {
+    }
+
+    /**
+     * @return the collected records
+     */
+    public List<ObjectNode> getRecords() {
+        return records;
+    }
+}
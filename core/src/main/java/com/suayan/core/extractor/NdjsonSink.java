@@ -0,0 +1,74 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Stream extracted records to a Writer as newline delimited JSON
+ * (JSON Lines): one record object per line, nothing else.
+ * 
+ * Consumers can process each line as it arrives and resume after a
+ * partial response at the last complete line. The writer is flushed
+ * after the first record and then every FLUSH_INTERVAL records, so
+ * records reach the client while the extract is still running. An empty
+ * result is an empty body. A truncated result ends with the line
+ * {"@truncated": reason}.
+ * 
+ * The underlying Writer is flushed but not closed by end().
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public class NdjsonSink implements ExtractSink {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final Writer writer;
+    private JsonGenerator generator = null;
+    private int count = 0;
+
+    public NdjsonSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void begin(List<ExtractRule> rules) throws IOException {
+        generator = JsonGenerators.open(writer);
+        // records are separated by the newline written after each of them.
+        generator.setRootValueSeparator(null);
+    }
+
+    public void accept(ObjectNode record) throws IOException {
+        if (record == null) {
+            return;
+        }
+        generator.writeTree(record);
+        generator.writeRaw('\n');
+        count++;
+        if (count % FLUSH_INTERVAL == 1) {
+            generator.flush();
+        }
+    }
+
+    public void end(String truncated) throws IOException {
+        if (truncated != null) {
+            generator.writeStartObject();
+            generator.writeStringField(TRUNCATED, truncated);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public int getCount() {
+        return count;
+    }
+}
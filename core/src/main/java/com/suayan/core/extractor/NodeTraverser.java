@@ -0,0 +1,86 @@
+package com.suayan.core.extractor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.suayan.core.utils.Utils;
+
+/**
+ * Deep extract of a Node and its descendants into an ObjectNode.
+ *
+ * Children are read from the Node objects already in hand rather than
+ * looked up again by path, and every level shares one immutable set of
+ * rejected keys. The walk stops descending at maxDepth and stops reading
+ * nodes once maxNodes have been read; either limit may be UNLIMITED.
+ *
+ * A traverser counts the nodes of one traverse() call and is meant to be
+ * used by a single thread.
+ *
+ * @author Kyo Suayan
+ *
+ */
+final class NodeTraverser {
+
+    /**
+     * Properties left out of every deep extract.
+     */
+    static final Set<String> REJECTED_KEYS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "jcr:path", "jcr:name", "jcr:primaryType", "jcr:created", "jcr:createdBy")));
+
+    private final int maxDepth;
+    private final int maxNodes;
+    private int visited = 0;
+    private boolean truncated = false;
+
+    /**
+     * @param maxDepth levels of children to read, ExtractContext.UNLIMITED for all
+     * @param maxNodes most nodes to read, ExtractContext.UNLIMITED for all
+     */
+    NodeTraverser(int maxDepth, int maxNodes) {
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param node
+     * @return the properties of node with each child as a nested object
+     * @throws RepositoryException
+     */
+    ObjectNode traverse(Node node) throws RepositoryException {
+        visited = 0;
+        truncated = false;
+        return walk(node, 0);
+    }
+
+    /**
+     * @return true if the last traverse() left out nodes because of maxNodes
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private ObjectNode walk(Node node, int depth) throws RepositoryException {
+        visited++;
+        ObjectNode json = Utils.convertNodeToJson(node, REJECTED_KEYS);
+        if (maxDepth != ExtractContext.UNLIMITED && depth >= maxDepth) {
+            return json;
+        }
+        NodeIterator it = node.getNodes();
+        while (it.hasNext()) {
+            if (maxNodes != ExtractContext.UNLIMITED && visited >= maxNodes) {
+                truncated = true;
+                break;
+            }
+            Node child = it.nextNode();
+            json.set(child.getName(), walk(child, depth + 1));
+        }
+        return json;
+    }
+}
@@ -0,0 +1,196 @@
+package com.suayan.core.extractor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Apply an ExtractPlan to a query result with several workers.
+ *
+ * The result paths are read from the NodeIterator in batches. Each batch
+ * is extracted on the shared executor with one of the worker sessions
+ * handed in for this extract, so no session is used by two threads at
+ * once. Batches are written to the sink in their original order, and
+ * only a bounded number of batches is in flight at any time.
+ * 
+ * The caller owns the worker sessions; they are no longer in use once
+ * extract() returns.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public class ParallelExtractor {
+
+    private static final long RELEASE_TIMEOUT_SECONDS = 60;
+
+    private final ExecutorService executor;
+    private final int batchSize;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    public ParallelExtractor(ExecutorService executor, int batchSize) {
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Extract every node of the iterator and write the records to the sink
+     * in iterator order.
+     *
+     * @param it
+     * @param plan an empty plan performs the default deep extract
+     * @param context the context of this extract, shared by all workers
+     * @param sink
+     * @param workerSessions one session per worker
+     * @return the number of records written
+     * @throws IOException if the sink fails, a batch fails or the extract is interrupted;
+     *         the batches still pending are cancelled
+     */
+    public int extract(NodeIterator it, ExtractPlan plan, ExtractContext context, ExtractSink sink,
+            List<Session> workerSessions) throws IOException {
+        if (it == null || workerSessions == null || workerSessions.isEmpty()) {
+            return 0;
+        }
+        int workers = workerSessions.size();
+        BlockingQueue<Session> sessions = new ArrayBlockingQueue<Session>(workers, false, workerSessions);
+        int count = 0;
+        Deque<Future<List<ObjectNode>>> pending = new ArrayDeque<Future<List<ObjectNode>>>();
+        try {
+            List<String> batch = new ArrayList<String>(batchSize);
+            while (it.hasNext()) {
+                batch.add(it.nextNode().getPath());
+                if (batch.size() == batchSize) {
+                    pending.add(executor.submit(new BatchTask(batch, plan, context, sessions)));
+                    batch = new ArrayList<String>(batchSize);
+                    if (pending.size() >= workers * 2) {
+                        count += write(pending.poll(), sink);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(executor.submit(new BatchTask(batch, plan, context, sessions)));
+            }
+            while (!pending.isEmpty()) {
+                count += write(pending.poll(), sink);
+            }
+        } catch (RepositoryException e) {
+            throw new IOException("Unable to read the query result.", e);
+        } finally {
+            for (Future<List<ObjectNode>> future : pending) {
+                future.cancel(false);
+            }
+            awaitSessions(sessions, workerSessions);
+        }
+        return count;
+    }
+
+    private int write(Future<List<ObjectNode>> future, ExtractSink sink) throws IOException {
+        List<ObjectNode> records;
+        try {
+            records = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parallel extract interrupted.");
+        } catch (ExecutionException e) {
+            // the records of the batch are missing, so the result must not be completed.
+            throw new IOException("Parallel extract batch failed.", e.getCause());
+        }
+        for (ObjectNode record : records) {
+            sink.accept(record);
+        }
+        return records.size();
+    }
+
+    /**
+     * Wait for running batches to hand their sessions back. A session that
+     * is still in use after the timeout is logged out, so the caller never
+     * gets back a session another thread is working with.
+     */
+    private void awaitSessions(BlockingQueue<Session> sessions, List<Session> workerSessions) {
+        List<Session> returned = new ArrayList<Session>(workerSessions.size());
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(RELEASE_TIMEOUT_SECONDS);
+        try {
+            while (returned.size() < workerSessions.size()) {
+                Session session = sessions.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (session == null) {
+                    break;
+                }
+                returned.add(session);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Session session : workerSessions) {
+            if (!returned.contains(session)) {
+                log.warn("Worker session was not released in time.");
+                session.logout();
+            }
+        }
+    }
+
+    /**
+     * Extract one batch of paths with a session borrowed from the queue.
+     */
+    private class BatchTask implements Callable<List<ObjectNode>> {
+
+        private final List<String> paths;
+        private final ExtractPlan plan;
+        private final ExtractContext context;
+        private final BlockingQueue<Session> sessions;
+
+        BatchTask(List<String> paths, ExtractPlan plan, ExtractContext context, BlockingQueue<Session> sessions) {
+            this.paths = paths;
+            this.plan = plan;
+            this.context = context;
+            this.sessions = sessions;
+        }
+
+        @Override
+        public List<ObjectNode> call() throws InterruptedException {
+            Session session = sessions.take();
+            try {
+                JsonExtractor jsonExtractor = new JsonExtractor(session, plan, context);
+                List<ObjectNode> records = new ArrayList<ObjectNode>(paths.size());
+                for (String path : paths) {
+                    if (plan.isEmpty()) {
+                        ObjectNode jsonNode = jsonExtractor.getJsonObject(path);
+                        if (jsonNode != null) {
+                            records.add(jsonNode);
+                        }
+                    } else {
+                        try {
+                            Node node = session.getNode(path);
+                            records.add(jsonExtractor.getJsonObject(node, JsonNodeFactory.instance.objectNode()));
+                        } catch (RepositoryException e) {
+                            log.error("Error extracting node at path: " + path, e);
+                        }
+                    }
+                }
+                return records;
+            } finally {
+                sessions.add(session);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.suayan.core.extractor;
+
+/**
+ * An ExtractSink that wants the values of PROPERTY rules with their JCR
+ * type: booleans, longs and doubles as JSON numbers and booleans, and
+ * dates as epoch millis. Every other sink gets strings, as before.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface TypedExtractSink extends ExtractSink {
+}
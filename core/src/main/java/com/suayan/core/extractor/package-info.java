@@ -0,0 +1,4 @@
+@Version("1.0")
+package com.suayan.core.extractor;
+
+import org.osgi.annotation.versioning.Version;
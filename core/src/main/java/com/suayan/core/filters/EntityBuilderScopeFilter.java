@@ -0,0 +1,62 @@
+package com.suayan.core.filters;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+
+import com.suayan.core.services.EntityBuilderScope;
+import com.suayan.core.services.EntityBuilderService;
+
+/**
+ * Runs each request in an EntityBuilderScope, so the models rendering
+ * it share one service resolver instead of logging in for every
+ * EntityBuilderService call. The resolver is only logged in if the
+ * request uses the service, and is closed when the request is done.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@ServiceDescription("Shares one EntityBuilderService resolver per request")
+@ServiceRanking(-800)
+@ServiceVendor("CCUI")
+public class EntityBuilderScopeFilter implements Filter {
+
+    @Reference
+    EntityBuilderService entityBuilder;
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+
+        EntityBuilderScope scope = entityBuilder.openScope();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+}
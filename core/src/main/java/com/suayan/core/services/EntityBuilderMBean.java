@@ -0,0 +1,18 @@
+package com.suayan.core.services;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the EntityBuilderService.
+ */
+@Description("CCUI entity builder")
+public interface EntityBuilderMBean {
+	@Description("Entities adapted by toList per model type: count, total and average milliseconds")
+	String[] getAdaptTimings();
+
+	@Description("toList calls adapted in parallel")
+	long getParallelCount();
+
+	@Description("Clear the adapt timings")
+	void resetAdaptTimings();
+}
@@ -0,0 +1,26 @@
+package com.suayan.core.services;
+
+/**
+ * A span of EntityBuilderService calls on one thread that share one
+ * service resolver and its session, instead of each call logging in
+ * on its own.
+ * 
+ * The resolver is logged in on first use and closed with the scope.
+ * Opening a scope while one is open on the thread joins it; only the
+ * outermost close ends it. Use it in try-with-resources:
+ * <pre>
+ * try (EntityBuilderScope scope = entityBuilder.openScope()) {
+ *     ...
+ * }
+ * </pre>
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface EntityBuilderScope extends AutoCloseable {
+	/**
+	 * Leave the scope, closing the shared resolver if it is the outermost one.
+	 */
+	@Override
+	void close();
+}
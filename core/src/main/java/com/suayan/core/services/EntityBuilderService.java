@@ -1,6 +1,9 @@
 package com.suayan.core.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.suayan.core.sling.SlingQueryStatement;
 
@@ -19,7 +22,27 @@ import com.suayan.core.sling.SlingQueryStatement;
 public interface EntityBuilderService {
     <T> T toItem(String path, Class<T> type);
     <T> List<T> toList(List<String> paths, Class<T> type);
+    /**
+     * Adapt the jcr:content of each path to type, resolving all of them
+     * before adapting. With parallel, long lists are split across a
+     * bounded pool of workers, each with a resolver of its own.
+     * @param paths page paths
+     * @param type the model type
+     * @param parallel true to allow adapting on several threads
+     * @return the entities in the order of paths, without the ones that did not resolve or adapt
+     */
+    <T> List<T> toList(List<String> paths, Class<T> type, boolean parallel);
     <T> List<T> query(SlingQueryStatement query, Class<T> type);
+    /**
+     * Run the query and adapt its result nodes to type only as they are
+     * read, so a caller that needs the first few does not adapt them all.
+     * @param query
+     * @param type
+     * @param offset the query results to skip
+     * @param limit the most query results to read, 0 for all
+     * @return the entities, skipping nodes that do not adapt; to be closed by the caller
+     */
+    <T> EntityIterator<T> iterate(SlingQueryStatement query, Class<T> type, long offset, long limit);
     List<String> queryForPaths(SlingQueryStatement query) throws Exception;
     List<String> queryForPathsUsingSelector(SlingQueryStatement sqs, String selector) throws Exception;
     <T> List<T> queryByProperty(String rootPath, String propertyName, String value, Class<T> type);
@@ -27,5 +50,30 @@ public interface EntityBuilderService {
     boolean pathHasProperty(String path, String property);
     String getResourceProperty(String path, String property);
     String[] getResourceMultiProperty(String path, String property); 
+    /**
+     * The batch form of pathHasProperty, resolving each path once with one resolver.
+     * @param properties the property names to check, by path
+     * @return the properties with a value that is not blank, by path; paths with none are left out
+     */
+    Map<String, Set<String>> pathsHaveProperties(Map<String, ? extends Collection<String>> properties);
+    /**
+     * The batch form of getResourceProperty, resolving each path once with one resolver.
+     * @param properties the property names to read, by path
+     * @return the String values, by property name and path; missing paths and properties are left out
+     */
+    Map<String, Map<String, String>> getResourceProperties(Map<String, ? extends Collection<String>> properties);
+    /**
+     * The batch form of getResourceMultiProperty, resolving each path once with one resolver.
+     * @param properties the property names to read, by path
+     * @return the String values, by property name and path; missing paths and properties are left out
+     */
+    Map<String, Map<String, String[]>> getResourceMultiProperties(Map<String, ? extends Collection<String>> properties);
     List<String> getPropertyFromComponents(String path, List<String> componentResourceTypes, String propertyName);    
+    /**
+     * Open a scope in which the calls made on this thread share one
+     * resolver and session. Calls outside of a scope open their own.
+     * Every request runs in a scope, see EntityBuilderScopeFilter.
+     * @return the scope, to be closed by the caller
+     */
+    EntityBuilderScope openScope();
 }
\ No newline at end of file
@@ -5,8 +5,9 @@ import org.osgi.service.metatype.annotations.AttributeType;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 /**
- * This is practically a placeholder for now. org.osgi's Activate/Deactivate annotations
- * require a different method signature that pass in schema configs instead of a BundleContext.
+ * org.osgi's Activate/Deactivate annotations require a different method signature
+ * that pass in schema configs instead of a BundleContext. Also sizes the pool
+ * toList adapts entities on in parallel.
  */
 @ObjectClassDefinition(
 	name = "CCUI EntityBuilder Configuration", 
@@ -15,4 +16,10 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 public @interface EntityBuilderServiceConfig {
 	@AttributeDefinition(name = "some.value", description = "Some Value", type = AttributeType.STRING)
 	String getSomeValue() default "some value here";
+
+	@AttributeDefinition(name = "Max parallelism", description = "Workers adapting the entities of one parallel toList call, each with its own resolver. 1 disables parallel adaptation.", type = AttributeType.INTEGER)
+	int maxParallelism() default 4;
+
+	@AttributeDefinition(name = "Parallel threshold", description = "Fewest paths a toList call adapts in parallel, smaller lists are adapted on the calling thread.", type = AttributeType.INTEGER)
+	int parallelThreshold() default 100;
 }
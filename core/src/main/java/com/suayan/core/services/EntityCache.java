@@ -0,0 +1,28 @@
+package com.suayan.core.services;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Recently adapted models, so the same page bean adapted by several
+ * components, or by several requests, is only built once.
+ * 
+ * Entries are keyed by resource path and model type, and are only
+ * reused while the cq:lastModified or jcr:lastModified of the resource
+ * is unchanged. They are dropped as soon as a resource change at, above
+ * or below their path is observed. Only the configured model types are
+ * cached; such models must not read their resource after adaptation,
+ * as it belongs to a resolver that may be closed by then.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface EntityCache {
+	/**
+	 * Adapt the resource, or return the model cached for it.
+	 * @param resource
+	 * @param type
+	 * @return the model, null if the resource does not adapt
+	 */
+	<T> T adapt(Resource resource, Class<T> type);
+	void clear();
+}
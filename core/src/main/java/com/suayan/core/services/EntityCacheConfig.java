@@ -0,0 +1,26 @@
+package com.suayan.core.services;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Sizing of the EntityCache and the model types it holds.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Entity Cache Configuration", 
+	description = "Models adapted by the EntityBuilderService that are reused"
+)
+public @interface EntityCacheConfig {
+	@AttributeDefinition(name = "Enabled", description = "Cache adapted models.", type = AttributeType.BOOLEAN)
+	boolean enabled() default false;
+
+	@AttributeDefinition(name = "Max entries", description = "Maximum number of cached models. The least recently used is dropped first.", type = AttributeType.INTEGER)
+	int maxEntries() default 1000;
+
+	@AttributeDefinition(name = "Model types", description = "Fully qualified class names of the models to cache. They must not read their resource after adaptation.")
+	String[] types() default {};
+
+	@AttributeDefinition(name = "Observed paths", description = "Resource changes under these paths invalidate cached models.")
+	String[] resource_paths() default { "/content" };
+}
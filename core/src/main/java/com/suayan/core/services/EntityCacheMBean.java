@@ -0,0 +1,27 @@
+package com.suayan.core.services;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the EntityCache.
+ */
+@Description("CCUI entity cache")
+public interface EntityCacheMBean {
+	@Description("Cached models")
+	int getSize();
+
+	@Description("Maximum number of cached models")
+	int getMaxEntries();
+
+	@Description("Hits, misses and hit rate per model type")
+	String[] getTypeHitRates();
+
+	@Description("Models dropped to make room for new ones")
+	long getEvictionCount();
+
+	@Description("Models dropped because of a resource change")
+	long getInvalidationCount();
+
+	@Description("Drop all cached models")
+	void clear();
+}
@@ -0,0 +1,29 @@
+package com.suayan.core.services;
+
+import java.util.Iterator;
+
+/**
+ * Query results adapted one at a time as they are read, from
+ * EntityBuilderService.iterate().
+ * 
+ * The iterator holds a resolver and session until it is exhausted or
+ * closed, so it must be closed when the caller stops reading early.
+ * Use it in try-with-resources:
+ * <pre>
+ * try (EntityIterator&lt;Article&gt; it = entityBuilder.iterate(sqs, Article.class, 0, 5)) {
+ *     while (it.hasNext()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface EntityIterator<T> extends Iterator<T>, AutoCloseable {
+	/**
+	 * Release the resolver and session. Safe to call more than once.
+	 */
+	@Override
+	void close();
+}
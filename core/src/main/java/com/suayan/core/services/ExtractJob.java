@@ -0,0 +1,45 @@
+package com.suayan.core.services;
+
+import com.suayan.core.extractor.ExtractFormat;
+import com.suayan.core.extractor.ExtractProgress;
+
+/**
+ * An extract run in the background by the ExtractJobService.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractJob {
+	public enum State {
+		QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+		/**
+		 * @return true once the job will not change any more
+		 */
+		public boolean isDone() {
+			return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+		}
+	}
+	/**
+	 * @return the id to poll the job with
+	 */
+	public String getId();
+	public State getState();
+	public ExtractFormat getFormat();
+	/**
+	 * @return the live counters of the extract, zero while queued
+	 */
+	public ExtractProgress getProgress();
+	/**
+	 * @return why the job failed, null otherwise
+	 */
+	public String getError();
+	/**
+	 * @return when the job was submitted, in epoch millis
+	 */
+	public long getSubmitTime();
+	/**
+	 * @return when the job was done, in epoch millis, 0 until then
+	 */
+	public long getFinishTime();
+}
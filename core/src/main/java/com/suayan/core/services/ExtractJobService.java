@@ -0,0 +1,54 @@
+package com.suayan.core.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.suayan.core.extractor.ExtractFormat;
+
+/**
+ * Runs large extracts in the background on a bounded pool, so clients
+ * do not have to hold a request open for the whole scan.
+ * 
+ * A submitted job is polled by id for its progress, and once it has
+ * succeeded its result is downloaded from a file written as the extract
+ * ran. Jobs and their results are kept for a limited time on the
+ * instance that ran them.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface ExtractJobService {
+	/**
+	 * Queue an extract, by config name or by query object.
+	 * @param configPath the config name, used if query is null
+	 * @param query the query object, as posted to the ExtractorServlet
+	 * @param params the request params, such as paging
+	 * @param format the format of the result
+	 * @return the queued job
+	 * @throws IllegalArgumentException if neither configPath nor query is given
+	 * @throws IllegalStateException if the queue is full
+	 */
+	public ExtractJob submit(String configPath, JSONObject query, Map<String,String[]> params, ExtractFormat format);
+	/**
+	 * @param id
+	 * @return the job, null if it is unknown or expired
+	 */
+	public ExtractJob getJob(String id);
+	/**
+	 * Open the result of a job. The caller closes the stream.
+	 * @param id
+	 * @return the result, null unless the job has succeeded
+	 * @throws IOException if the result can not be read
+	 */
+	public InputStream openResult(String id) throws IOException;
+	/**
+	 * Cancel a queued or running job. A running job ends at the next node
+	 * it scans, and its partial result is discarded.
+	 * @param id
+	 * @return the job, null if it is unknown or expired
+	 */
+	public ExtractJob cancel(String id);
+}
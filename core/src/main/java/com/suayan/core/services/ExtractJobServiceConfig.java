@@ -0,0 +1,23 @@
+package com.suayan.core.services;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Sizing for the ExtractJobService.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Extract Job Service Configuration", 
+	description = "Sizing and retention of background extract jobs"
+)
+public @interface ExtractJobServiceConfig {
+	@AttributeDefinition(name = "Max concurrent jobs", description = "Jobs running at once, the others wait in the queue.", type = AttributeType.INTEGER)
+	int maxConcurrentJobs() default 2;
+
+	@AttributeDefinition(name = "Max queued jobs", description = "Jobs waiting to run before new ones are refused.", type = AttributeType.INTEGER)
+	int maxQueuedJobs() default 10;
+
+	@AttributeDefinition(name = "Retention", description = "Minutes a finished job and its result are kept.", type = AttributeType.INTEGER)
+	int retentionMinutes() default 60;
+}
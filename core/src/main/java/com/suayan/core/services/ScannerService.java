@@ -1,10 +1,18 @@
 package com.suayan.core.services;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.suayan.core.extractor.ExtractBatchSink;
+import com.suayan.core.extractor.ExtractExplain;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.extractor.ExtractSink;
+
 /**
  * The ScannerService interface defines basic services for retrieving
  * either a list of JCRPaths or JSONObjects from a SQL or xpath Query.
@@ -14,6 +22,12 @@ import org.json.JSONObject;
  * mappings from the JCR Node (sourcepath) and Property (sourceproperty)
  * and the desired top level property name.
  * 
+ * The streaming extract methods page their result with the limit,
+ * offset and cursor params (see ExtractPage), or return only the
+ * changes since a watermark with the since param (see ExtractDelta).
+ * Each extract stops at its maxResults and maxMillis budget, leaving a
+ * truncated result (see ExtractProgress).
+ * 
  * @author Kyo Suayan
  *
  */
@@ -30,33 +44,93 @@ public interface ScannerService {
 	 * @param  queryLanguage
 	 * @return
 	 */
-	public List<JSONObject> queryForPageTitles(String query, String queryLanguage);
+	public List<ObjectNode> queryForPageTitles(String query, String queryLanguage);
 	/**
 	 * Pass in a JCR path of a JSON config file.
 	 * @param configPath
 	 * @return
 	 */
-	public List<JSONObject> queryByJsonConfig(String configPath, Map<String,String[]> params);
+	public List<ObjectNode> queryByJsonConfig(String configPath, Map<String,String[]> params);
 	
 	/**
 	 * Perform query based an actual JSON query object.
 	 * @return
 	 */
-	public List<JSONObject> queryByJsonObject(JSONObject jsonObj, Map<String,String[]> params);
+	public List<ObjectNode> queryByJsonObject(JSONObject jsonObj, Map<String,String[]> params);
 	/**
-	 * Recursive.
-	 * @param query
-	 * @return
+	 * Streaming variant of queryByJsonConfig. Each extracted record is
+	 * handed to the sink as soon as its node is read from the query result.
+	 * @param configPath
+	 * @param params
+	 * @param sink
+	 * @return the number of records written to the sink
+	 * @throws IOException if the sink fails to write
+	 * @throws IllegalArgumentException if the paging params are not valid
 	 */
-	public abstract List<JSONObject> queryForJsonObjects(String query, String queryLanguage);	
+	public int extractByJsonConfig(String configPath, Map<String,String[]> params, ExtractSink sink) throws IOException;
 	/**
-	 *
-	 * @return
+	 * Streaming variant of queryByJsonObject.
+	 * @param jsonObj
+	 * @param params
+	 * @param sink
+	 * @return the number of records written to the sink
+	 * @throws IOException if the sink fails to write
+	 * @throws IllegalArgumentException if the paging params are not valid
+	 */
+	public int extractByJsonObject(JSONObject jsonObj, Map<String,String[]> params, ExtractSink sink) throws IOException;
+	/**
+	 * Variant of extractByJsonConfig for long running extracts.
+	 * @param configPath
+	 * @param params
+	 * @param sink
+	 * @param progress counts the nodes scanned and the records written, cancels the extract and tells if it was truncated
+	 * @return the number of records written to the sink
+	 * @throws IOException if the sink fails to write
+	 * @throws IllegalArgumentException if the paging params are not valid
 	 */
-	public boolean isRecurseEnabled();
+	public int extractByJsonConfig(String configPath, Map<String,String[]> params, ExtractSink sink,
+			ExtractProgress progress) throws IOException;
 	/**
-	 * 
-	 * @param recurseEnabled
+	 * Variant of extractByJsonObject for long running extracts.
+	 * @param jsonObj
+	 * @param params
+	 * @param sink
+	 * @param progress counts the nodes scanned and the records written, cancels the extract and tells if it was truncated
+	 * @return the number of records written to the sink
+	 * @throws IOException if the sink fails to write
+	 * @throws IllegalArgumentException if the paging params are not valid
+	 */
+	public int extractByJsonObject(JSONObject jsonObj, Map<String,String[]> params, ExtractSink sink,
+			ExtractProgress progress) throws IOException;
+	/**
+	 * Run several extracts as one request and write each result under its
+	 * name. The params are shared by every extract of the batch.
+	 * @param batch extract name to a config path (a string) or a query object
+	 * @param params
+	 * @param sink
+	 * @throws IOException if the sink fails to write
+	 */
+	public void extractBatch(JSONObject batch, Map<String,String[]> params, ExtractBatchSink sink) throws IOException;
+	/**
+	 * Explain how the repository runs the query of an extract, and time a
+	 * run of the query apart from the extraction.
+	 * @param config a config path (a string) or a query object
+	 * @param params the query values and paging params
+	 * @return the report, null if there is no such config
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the paging params are not valid
+	 */
+	public ExtractExplain explain(Object config, Map<String,String[]> params) throws IOException;
+	/**
+	 * Explain, without running them, the queries of all configs under
+	 * /apps/ccui/extractor, to find the ones no index covers.
+	 * @return the report of each config by name
+	 */
+	public Map<String,ExtractExplain> explainConfigs();
+	/**
+	 * Recursive.
+	 * @param query
+	 * @return
 	 */
-	public void setRecurseEnabled(boolean recurseEnabled);
+	public abstract List<ObjectNode> queryForJsonObjects(String query, String queryLanguage);	
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.suayan.core.services;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Limits for the ScannerService. Extractor configs may ask for
+ * more, but never get more than what is configured here.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Scanner Service Configuration", 
+	description = "Limits for extracts run by the CCUI ScannerService"
+)
+public @interface ScannerServiceConfig {
+	@AttributeDefinition(name = "Max parallelism", description = "Upper bound for the \"parallelism\" of an extractor config. 1 disables parallel extraction.", type = AttributeType.INTEGER)
+	int maxParallelism() default 4;
+
+	@AttributeDefinition(name = "Parallel batch size", description = "Number of result nodes handed to a worker at a time.", type = AttributeType.INTEGER)
+	int parallelBatchSize() default 100;
+
+	@AttributeDefinition(name = "Max depth", description = "Upper bound for the levels of children read by a deep extract. 0 leaves it to the extractor config.", type = AttributeType.INTEGER)
+	int maxDepth() default 0;
+
+	@AttributeDefinition(name = "Max nodes", description = "Upper bound for the nodes read by one deep extract. 0 leaves it to the extractor config.", type = AttributeType.INTEGER)
+	int maxNodes() default 0;
+
+	@AttributeDefinition(name = "Max results", description = "Upper bound for the query result nodes read by one extract. The result is truncated beyond it. 0 leaves it to the extractor config.", type = AttributeType.INTEGER)
+	int maxResults() default 0;
+
+	@AttributeDefinition(name = "Max time", description = "Upper bound in milliseconds for one extract. The result is truncated once it runs out. 0 leaves it to the extractor config.", type = AttributeType.INTEGER)
+	int maxMillis() default 0;
+}
@@ -1,11 +1,24 @@
 package com.suayan.core.services;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -14,24 +27,45 @@ import javax.jcr.Session;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
 
-import org.apache.sling.jcr.api.SlingRepository;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.suayan.core.extractor.ChangeJournal;
+import com.suayan.core.extractor.ExtractBatchSink;
+import com.suayan.core.extractor.ExtractConfig;
+import com.suayan.core.extractor.ExtractConfigCache;
+import com.suayan.core.extractor.ExtractContext;
+import com.suayan.core.extractor.ExtractDelta;
+import com.suayan.core.extractor.ExtractDeltaExpiredException;
+import com.suayan.core.extractor.ExtractExplain;
+import com.suayan.core.extractor.ExtractMemo;
+import com.suayan.core.extractor.ExtractPage;
+import com.suayan.core.extractor.ExtractPlan;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.extractor.ExtractResultCache;
+import com.suayan.core.extractor.ExtractResultKey;
 import com.suayan.core.extractor.ExtractRule;
-import com.suayan.core.extractor.ExtractRulesParser;
+import com.suayan.core.extractor.ExtractSink;
 import com.suayan.core.extractor.ExtractType;
-import com.suayan.core.extractor.JcrReader;
 import com.suayan.core.extractor.JsonExtractor;
+import com.suayan.core.extractor.JsonListSink;
+import com.suayan.core.extractor.ParallelExtractor;
+import com.suayan.core.extractor.TypedExtractSink;
+import com.suayan.core.sling.QueryTemplate;
 import com.suayan.core.utils.Utils;
 
 /**
@@ -41,36 +75,74 @@ import com.suayan.core.utils.Utils;
  *
  */
 @Component(immediate = true)
+@Designate(ocd = ScannerServiceConfig.class)
 public class ScannerServiceImpl implements ScannerService {
 
   @Reference
-  SlingRepository repository;
+  private ExtractConfigCache configCache;
 
   @Reference
-  private JcrReader jcrReader;
+  private SessionPool sessionPool;
+
+  @Reference
+  private ExtractResultCache resultCache;
+
+  @Reference
+  private ChangeJournal changeJournal;
 
   private final Logger log = LoggerFactory.getLogger(this.getClass());
   // The directory where JSON Query definitions are located
   private static final String CONFIG_PATH = "apps/ccui/extractor/";
-  private Session session = null;
-  private boolean recurseEnabled = false;
-  private final ExtractRule defaultRule = new ExtractRule(null, ExtractType.ALL);
+  // Most records and deep extracts shared within one batch.
+  private static final int BATCH_MEMO_SIZE = 5000;
+  private static final int BATCH_RUN_AHEAD = 500;
+  private static final long BATCH_POLL_MILLIS = 100;
+  private static final ObjectNode END_OF_ENTRY = JsonNodeFactory.instance.objectNode();
+  // placeholders of the path range of a page, never taken from request params.
+  private static final String AFTER_PARAM = "_pageAfter";
+  private static final String UNTIL_PARAM = "_pageUntil";
+  private int maxParallelism = 1;
+  private int parallelBatchSize = 100;
+  private int maxDepth = ExtractContext.UNLIMITED;
+  private int maxNodes = ExtractContext.UNLIMITED;
+  private int maxResults = ExtractContext.UNLIMITED;
+  private int maxMillis = ExtractContext.UNLIMITED;
+  // Shared by all parallel extracts, sized by maxParallelism.
+  private volatile ExecutorService executor = null;
 
   @Activate
-  public void init() {
-    try {
-      this.session = this.repository.loginService("ccui-root-read-user", null);
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
+  @Modified
+  protected void activate(ScannerServiceConfig config) {
+    maxParallelism = Math.max(1, config.maxParallelism());
+    parallelBatchSize = Math.max(1, config.parallelBatchSize());
+    maxDepth = Math.max(ExtractContext.UNLIMITED, config.maxDepth());
+    maxNodes = Math.max(ExtractContext.UNLIMITED, config.maxNodes());
+    maxResults = Math.max(ExtractContext.UNLIMITED, config.maxResults());
+    maxMillis = Math.max(ExtractContext.UNLIMITED, config.maxMillis());
+    shutdownExecutor();
+    if (maxParallelism > 1) {
+      executor = Executors.newFixedThreadPool(maxParallelism, new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ccui-extract-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
     }
   }
 
-  public boolean isRecurseEnabled() {
-    return recurseEnabled;
+  @Deactivate
+  protected void deactivate() {
+    shutdownExecutor();
   }
 
-  public void setRecurseEnabled(boolean recurseEnabled) {
-    this.recurseEnabled = recurseEnabled;
+  private void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
   }
 
   /**
@@ -80,9 +152,17 @@ public class ScannerServiceImpl implements ScannerService {
    */
   public List<String> queryForJcrPaths(String query, String language) {
     List<String> paths = null;
-    NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(query, language);
-    if (nodeIter != null) {
-      paths = this.getPaths(nodeIter);
+    Session session = borrowSession();
+    if (session == null) {
+      return paths;
+    }
+    try {
+      NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(session, query, language);
+      if (nodeIter != null) {
+        paths = this.getPaths(nodeIter);
+      }
+    } finally {
+      sessionPool.release(session);
     }
     return paths;
   }
@@ -90,11 +170,19 @@ public class ScannerServiceImpl implements ScannerService {
   /**
    * Retrieve PageTitles for given sqlQuery.
    */
-  public List<JSONObject> queryForPageTitles(String query, String language) {
-    List<JSONObject> pages = null;
-    NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(query, language);
-    if (nodeIter != null) {
-      pages = this.getPageTitles(nodeIter);
+  public List<ObjectNode> queryForPageTitles(String query, String language) {
+    List<ObjectNode> pages = null;
+    Session session = borrowSession();
+    if (session == null) {
+      return pages;
+    }
+    try {
+      NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(session, query, language);
+      if (nodeIter != null) {
+        pages = this.getPageTitles(session, nodeIter);
+      }
+    } finally {
+      sessionPool.release(session);
     }
     return pages;
   }
@@ -105,18 +193,14 @@ public class ScannerServiceImpl implements ScannerService {
    * node found while applying all ExtractRules defined in ExtractRulesParser.
    * 
    */
-  public List<JSONObject> queryByJsonConfig(String path, Map<String, String[]> params) {
-    List<JSONObject> pages = null;
-    String jsonPath = CONFIG_PATH + path + ".json";
-    jcrReader.setFilepath(jsonPath);
-    String jsonConfig = jcrReader.readToString();
+  public List<ObjectNode> queryByJsonConfig(String path, Map<String, String[]> params) {
+    JsonListSink sink = new JsonListSink();
     try {
-      JSONObject jsonObj = new JSONObject(jsonConfig);
-      pages = queryByJsonObject(jsonObj, params);
-    } catch (Exception e) {
+      extractByJsonConfig(path, params, sink);
+    } catch (IOException | IllegalArgumentException e) {
       log.error(">>> Exception: " + e.getMessage());
     }
-    return pages;
+    return sink.getRecords();
   }
 
   /**
@@ -127,82 +211,514 @@ public class ScannerServiceImpl implements ScannerService {
    * @param params
    * @return
    */
-  public List<JSONObject> queryByJsonObject(JSONObject jsonObj, Map<String, String[]> params) {
-    List<JSONObject> pages = null;
-    List<ExtractRule> parsedRules = null;
-    ExtractRulesParser ruleParser = null;
+  public List<ObjectNode> queryByJsonObject(JSONObject jsonObj, Map<String, String[]> params) {
+    JsonListSink sink = new JsonListSink();
     try {
-      String query = this.compileQuery(jsonObj.getString("query"), params);
-      String queryLanguage = Query.JCR_SQL2;
-      if (jsonObj.has("language")) {
-        queryLanguage = jsonObj.getString("language");
-      }
-      boolean recurse = false;
-      if (jsonObj.has("recurse")) {
-        recurse = jsonObj.getBoolean("recurse");
-        log.info("recurse enabled");
-      }
-      this.setRecurseEnabled(recurse);
-      NodeIterator it = this.getNodeIteratorFromJcrQuery(query, queryLanguage);
-      if (jsonObj.has("rules")) {
-        JSONArray jsonRules = jsonObj.getJSONArray("rules");
-        if (jsonRules.length() > 0) {
-          ruleParser = new ExtractRulesParser(jsonRules);
-          parsedRules = ruleParser.parseExtractRules();
-          pages = this.getExtractedPages(it, parsedRules);
+      extractByJsonObject(jsonObj, params, sink);
+    } catch (IOException | IllegalArgumentException e) {
+      log.error(">>> Exception: " + e.getMessage());
+    }
+    return sink.getRecords();
+  }
+
+  /**
+   * Look up the parsed config file and stream its extract to the sink.
+   */
+  public int extractByJsonConfig(String path, Map<String, String[]> params, ExtractSink sink) throws IOException {
+    return extractByJsonConfig(path, params, sink, null);
+  }
+
+  /**
+   * Look up the parsed config file and stream its extract to the sink,
+   * reporting to progress.
+   */
+  public int extractByJsonConfig(String path, Map<String, String[]> params, ExtractSink sink,
+      ExtractProgress progress) throws IOException {
+    String jsonPath = CONFIG_PATH + path + ".json";
+    return extract(configCache.getConfig(jsonPath), params, sink, null, true, progress);
+  }
+
+  /**
+   * Parse the JSON query object and stream its extract to the sink.
+   */
+  public int extractByJsonObject(JSONObject jsonObj, Map<String, String[]> params, ExtractSink sink) throws IOException {
+    return extractByJsonObject(jsonObj, params, sink, null);
+  }
+
+  /**
+   * Parse the JSON query object and stream its extract to the sink,
+   * reporting to progress.
+   */
+  public int extractByJsonObject(JSONObject jsonObj, Map<String, String[]> params, ExtractSink sink,
+      ExtractProgress progress) throws IOException {
+    ExtractConfig config = null;
+    if (jsonObj != null) {
+      try {
+        config = ExtractConfig.fromJson(jsonObj);
+      } catch (JSONException e) {
+        log.error(">>> Exception: " + e.getMessage());
+      }
+    }
+    return extract(config, params, sink, null, true, progress);
+  }
+
+  /**
+   * Run the extracts of the batch concurrently on the shared executor and
+   * write the results in batch order. The extracts after the one being
+   * written run ahead into a bounded buffer of BATCH_RUN_AHEAD records
+   * each, and wait once it is full. Each extract borrows its own session,
+   * and all of them share one ExtractMemo, so a node matched by several
+   * extracts is read once. Without an executor, or for a single extract,
+   * the results are streamed one after the other instead.
+   */
+  public void extractBatch(JSONObject batch, Map<String, String[]> params, ExtractBatchSink sink) throws IOException {
+    ExtractMemo memo = new ExtractMemo(BATCH_MEMO_SIZE);
+    List<BatchEntry> entries = new ArrayList<BatchEntry>();
+    if (batch != null) {
+      Iterator<?> names = batch.keys();
+      while (names.hasNext()) {
+        String name = String.valueOf(names.next());
+        ExtractConfig config = this.getConfig(batch.opt(name));
+        if (config == null) {
+          sink.error(name, "Unknown extract config.");
         } else {
-          pages = getDefaultExtract(it);
+          entries.add(new BatchEntry(name, config, params, memo));
         }
-      } else {
-        pages = getDefaultExtract(it);
       }
-    } catch (Exception e) {
-      log.error(">>> Exception: " + e.getMessage());
     }
-    return pages;
+    ExecutorService currentExecutor = executor;
+    if (currentExecutor == null || entries.size() < 2) {
+      for (BatchEntry entry : entries) {
+        try {
+          extract(entry.config, params, sink.open(entry.name), memo, false, null);
+        } catch (IllegalArgumentException e) {
+          sink.error(entry.name, e.getMessage());
+        }
+      }
+    } else {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      try {
+        for (BatchEntry entry : entries) {
+          futures.add(currentExecutor.submit(entry));
+        }
+        for (BatchEntry entry : entries) {
+          entry.drainTo(sink);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the batch.");
+      } finally {
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+    sink.end();
+    log.debug("Extracted a batch of {} with {}", entries.size(), memo);
   }
 
   /**
-   * Replace placeholders in query with map values using {key} as
-   * substring to look for.
+   * @param value a config name or a query object
+   * @return the config, null if there is none
+   */
+  private ExtractConfig getConfig(Object value) {
+    if (value instanceof String) {
+      return configCache.getConfig(CONFIG_PATH + value + ".json");
+    }
+    if (value instanceof JSONObject) {
+      try {
+        return ExtractConfig.fromJson((JSONObject) value);
+      } catch (JSONException e) {
+        log.error(">>> Exception: " + e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Execute the query in the config and hand each extracted node to the sink
+   * while walking the NodeIterator, so no intermediate list is built.
    * 
-   * @param query
+   * The limit, offset and cursor params select one page of the result,
+   * and the cursor of the next page is set on progress before the first
+   * record (see pageQuery).
+   * A config with "parallelism" above 1 is extracted by that many workers,
+   * capped by the configured maxParallelism and by the sessions the pool
+   * can hand out right now. Deep extracts are likewise limited by the
+   * config's maxDepth and maxNodes, capped by the configured values.
+   * 
+   * All sessions are borrowed from the SessionPool for this call only and
+   * released before it returns. Unless the config sets "cache" to false,
+   * a result still in the ExtractResultCache is written without running
+   * the query.
+   * 
+   * With a since param only the nodes modified after that watermark are
+   * written, preceded by a tombstone for each path removed under the
+   * query root since then. Deltas are never cached.
+   * 
+   * The scan stops early when the progress is cancelled or when the extract
+   * is over its maxResults or maxMillis budget, the tighter of the config
+   * and the OSGi limit. What was emitted by then is ended with the reason
+   * passed to the sink's end(), and is never cached.
+   * 
+   * @param config the parsed config, null writes an empty result
    * @param params
-   * @return
+   * @param sink
+   * @param memo the memo of the batch, null outside of one
+   * @param parallel false to never use the shared executor, for extracts already running on it
+   * @param progress tells the caller whether the result was truncated, null if nobody follows the extract
+   * @return the number of records written, tombstones included
+   * @throws IOException
+   * @throws ExtractDeltaExpiredException if the ChangeJournal does not reach back to since
+   * @throws IllegalArgumentException if the cursor was issued for another query
    */
-  private String compileQuery(String query, Map<String, String[]> params) {
-    if (query == null)
-      return null;
+  private int extract(ExtractConfig config, Map<String, String[]> params, ExtractSink sink, ExtractMemo memo,
+      boolean parallel, ExtractProgress progress) throws IOException {
+    ExtractPage page = ExtractPage.fromParams(params);
+    ExtractPlan plan = config == null ? ExtractPlan.compile(null) : config.getPlan();
+    ExtractContext context = config == null ? ExtractContext.defaults() : config.newContext(maxDepth, maxNodes);
+    if (memo != null) {
+      context = context.withMemo(memo);
+    }
+    if (sink instanceof TypedExtractSink) {
+      context = context.withTypedValues();
+    }
+    QueryTemplate template = config == null ? null : config.getQueryTemplate();
+    Map<String, String> values = config == null ? null : this.getQueryValues(template, params);
+    ExtractDelta delta = null;
+    long since = ExtractDelta.sinceFromParams(params);
+    if (config != null && since != ExtractDelta.NONE) {
+      delta = changeJournal.getDelta(since);
+      if (delta == null) {
+        throw new ExtractDeltaExpiredException(since);
+      }
+      plan = delta.extend(plan);
+    }
+    if (progress == null) {
+      progress = new ExtractProgress();
+    }
+    if (config != null) {
+      setBudget(progress, config, context);
+    }
+    sink = progress.track(sink);
+    ExtractSink recording = null;
+    Session session = null;
+    List<Session> workers = new ArrayList<Session>();
+    try {
+      PagedQuery query = null;
+      if (config != null) {
+        page.checkStatement(template.render(values));
+        if (page.isPaged()) {
+          // the cursor of the next page has to be known before the first record.
+          session = borrowSession();
+          query = session == null ? null : this.pageQuery(session, template, values, page, progress);
+        } else {
+          query = new PagedQuery(template, values, page);
+        }
+      }
+      if (query != null && delta == null && config.isCacheable()) {
+        ExtractResultKey key = new ExtractResultKey(query.template.render(query.values), config.getLanguage(), plan,
+            query.page, context);
+        int cached = resultCache.replay(key, plan.getRules(), sink);
+        if (cached >= 0) {
+          return cached;
+        }
+        // created before the query runs, so changes made while it runs are noticed.
+        recording = resultCache.record(key, sink);
+      }
+      if (query != null && session == null) {
+        session = borrowSession();
+      }
+      NodeIterator it = null;
+      if (session != null) {
+        it = this.getNodeIteratorFromJcrQuery(session, query.template, query.values, query.page);
+      }
+      if (it != null) {
+        it = progress.track(it);
+      }
+      if (it != null && delta != null) {
+        it = delta.filter(it);
+      }
+      if (it != null && recording != null) {
+        // a failed query is not cached.
+        sink = recording;
+      }
+      int count = 0;
+      int parallelism = config == null || !parallel ? 1 : Math.min(config.getParallelism(), maxParallelism);
+      ExecutorService currentExecutor = executor;
+      if (it != null && parallelism > 1 && currentExecutor != null) {
+        // take only the sessions that are free now rather than wait for them.
+        Session worker;
+        while (workers.size() < parallelism && (worker = sessionPool.tryBorrow()) != null) {
+          workers.add(worker);
+        }
+      }
+      sink.begin(plan.getRules());
+      if (it != null && delta != null) {
+        // tombstones first, so a path removed and added again ends up present.
+        String rootPath = ExtractResultKey.rootPathOf(template.render(values), config.getLanguage());
+        for (String removed : delta.getRemovedPaths(rootPath)) {
+          sink.accept(delta.tombstone(removed, plan));
+          count++;
+        }
+      }
+      if (workers.size() > 1) {
+        count += new ParallelExtractor(currentExecutor, parallelBatchSize).extract(it, plan, context, sink, workers);
+      } else if (!plan.isEmpty()) {
+        count += this.writeExtractedPages(session, it, plan, context, sink);
+      } else {
+        count += this.writeDefaultExtract(session, it, context, sink);
+      }
+      // the recording does not cache a truncated result.
+      sink.end(progress.getTruncatedReason());
+      if (progress.isTruncated()) {
+        log.warn("Extract truncated ({}) after {} records in {}ms: {}", progress.getTruncatedReason(), count,
+            context.getElapsedMillis(), config.getQuery());
+      }
+      log.debug("Extracted {} records in {}ms with {}", count, context.getElapsedMillis(), context);
+      return count;
+    } finally {
+      for (Session worker : workers) {
+        sessionPool.release(worker);
+      }
+      sessionPool.release(session);
+    }
+  }
+
+  /**
+   * Resolve a page into the query that reads it and set the cursor of the
+   * next page on progress.
+   * 
+   * A JCR-SQL2 query without an ORDER BY of its own is paged by path: a
+   * probe reads the path the page ends at, and the page is then read as
+   * the range of paths after the cursor's path up to that one. Each page
+   * is a fixed range, so no row is skipped or repeated between pages, and
+   * no page walks the rows before it. Only the probe of a first page with
+   * an offset skips rows. Other queries are paged by offset, with the
+   * path added to a JCR-SQL2 ORDER BY to keep the order stable.
+   */
+  private PagedQuery pageQuery(Session session, QueryTemplate template, Map<String, String> values,
+      ExtractPage page, ExtractProgress progress) {
+    String statement = template.render(values);
+    String after = page.getAfter();
+    QueryTemplate probe = template.withPathRange(after != null ? AFTER_PARAM : null, null);
+    if (probe == null) {
+      if (after != null) {
+        throw new IllegalArgumentException("The cursor was issued for another query.");
+      }
+      progress.setNextCursor(page.next().toCursor(statement));
+      return new PagedQuery(template.withPathTieBreak(), values, page);
+    }
+    Map<String, String> probeValues = new HashMap<String, String>(values);
+    if (after != null) {
+      probeValues.put(AFTER_PARAM, after);
+    }
+    String until = null;
+    NodeIterator it = this.getNodeIteratorFromJcrQuery(session, probe, probeValues,
+        new ExtractPage(page.getOffset() + page.getLimit() - 1, 1));
+    try {
+      if (it != null && it.hasNext()) {
+        until = it.nextNode().getPath();
+      }
+    } catch (RepositoryException e) {
+      log.error("Unable to read the end of the page: " + e.getMessage(), e);
+    }
+    if (until == null) {
+      // the last page, there is no cursor after it.
+      return new PagedQuery(probe, probeValues, new ExtractPage(page.getOffset(), page.getLimit()));
+    }
+    progress.setNextCursor(page.after(until).toCursor(statement));
+    Map<String, String> rangeValues = new HashMap<String, String>(probeValues);
+    rangeValues.put(UNTIL_PARAM, until);
+    return new PagedQuery(template.withPathRange(after != null ? AFTER_PARAM : null, UNTIL_PARAM), rangeValues,
+        new ExtractPage(page.getOffset(), 0));
+  }
+
+  /**
+   * Apply the maxResults and maxMillis of the config, capped by the OSGi limits.
+   */
+  private void setBudget(ExtractProgress progress, ExtractConfig config, ExtractContext context) {
+    int budgetMillis = ExtractContext.limit(config.getMaxMillis(), maxMillis);
+    progress.setBudget(ExtractContext.limit(config.getMaxResults(), maxResults),
+        budgetMillis == ExtractContext.UNLIMITED ? 0 : context.getStartTime() + budgetMillis);
+  }
 
-    if (params == null)
-      return query;
+  /**
+   * Explain the query of the config and run its extract into nothing,
+   * timing the query, up to the first result node, apart from the
+   * extraction. The run is serial and never cached, so it shows the cost
+   * of the query itself; it stops at the budget of the config.
+   */
+  public ExtractExplain explain(Object config, Map<String, String[]> params) throws IOException {
+    return explain(getConfig(config), params, true);
+  }
 
-    String result = query;
-    for (Map.Entry<String, String[]> entry : params.entrySet()) {
-      String token = Pattern.quote("{" + entry.getKey() + "}");
-      String[] values = entry.getValue();
-      log.info("token: " + token + " value:" + values[0]);
-      result = result.replaceAll(token, Matcher.quoteReplacement(values[0]));
+  /**
+   * Explain, without running, the query of every config under
+   * /apps/ccui/extractor. Placeholders without a value are explained
+   * as written.
+   */
+  public Map<String, ExtractExplain> explainConfigs() {
+    Map<String, ExtractExplain> explains = new TreeMap<String, ExtractExplain>();
+    List<String> names = new ArrayList<String>();
+    Session session = borrowSession();
+    if (session == null) {
+      return explains;
+    }
+    try {
+      String root = "/" + CONFIG_PATH.substring(0, CONFIG_PATH.length() - 1);
+      if (session.nodeExists(root)) {
+        NodeIterator it = session.getNode(root).getNodes();
+        while (it.hasNext()) {
+          String name = it.nextNode().getName();
+          if (name.endsWith(".json")) {
+            names.add(name.substring(0, name.length() - ".json".length()));
+          }
+        }
+      }
+    } catch (RepositoryException e) {
+      log.error("Unable to list the extractor configs: " + e.getMessage(), e);
+    } finally {
+      sessionPool.release(session);
+    }
+    for (String name : names) {
+      try {
+        ExtractExplain explain = explain(configCache.getConfig(CONFIG_PATH + name + ".json"), null, false);
+        if (explain != null) {
+          explains.put(name, explain);
+        }
+      } catch (IOException e) {
+        log.error("Unable to explain " + name + ": " + e.getMessage());
+      }
     }
-    log.info(">> compiled: " + result);
-    return result;
+    return explains;
   }
 
-public List<JSONObject> queryForJsonObjects(String query, String queryLanguage) {
-   List<JSONObject> jsonNodes = new ArrayList<>();
-   NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(query, queryLanguage);
-    
-    if (nodeIter != null) {
-        while (nodeIter.hasNext()) {
-            try {
-                Node node = nodeIter.nextNode();
-                ObjectNode jsonNode = Utils.convertNodeToJson(node);
-                jsonNodes.add(Utils.toJsonObject(jsonNode));
-            } catch (RepositoryException e) {
-                log.error("Error processing node: " + e.getMessage(), e);
-            }
+  private ExtractExplain explain(ExtractConfig config, Map<String, String[]> params, boolean run) throws IOException {
+    if (config == null) {
+      return null;
+    }
+    QueryTemplate template = config.getQueryTemplate();
+    Map<String, String> values = this.getQueryValues(template, params);
+    ExtractPage page = ExtractPage.fromParams(params);
+    Session session = borrowSession();
+    if (session == null) {
+      ExtractExplain explain = new ExtractExplain(template.render(values), config.getLanguage(), null);
+      explain.addWarning("No session available.");
+      return explain;
+    }
+    try {
+      ExtractExplain explain = new ExtractExplain(template.render(values), config.getLanguage(),
+          this.getQueryPlan(session, template, values));
+      if (explain.isTraversal()) {
+        log.warn("Extract query is not covered by an index: {}", explain.getStatement());
+      }
+      if (run) {
+        ExtractContext context = config.newContext(maxDepth, maxNodes);
+        ExtractProgress progress = new ExtractProgress();
+        setBudget(progress, config, context);
+        ExtractSink discard = new ExtractSink() {
+          public void begin(List<ExtractRule> rules) {
+          }
+
+          public void accept(ObjectNode record) {
+          }
+
+          public void end(String truncated) {
+          }
+        };
+        long start = System.currentTimeMillis();
+        NodeIterator it = this.getNodeIteratorFromJcrQuery(session, template, values, page);
+        if (it != null) {
+          it = progress.track(it);
+          // Oak reads the index when the first node is asked for.
+          it.hasNext();
         }
+        long queried = System.currentTimeMillis();
+        int count = config.getPlan().isEmpty() ? this.writeDefaultExtract(session, it, context, discard)
+            : this.writeExtractedPages(session, it, config.getPlan(), context, discard);
+        explain.setRun(queried - start, System.currentTimeMillis() - queried, count, progress.getScanned(),
+            progress.getTruncatedReason());
+      }
+      return explain;
+    } finally {
+      sessionPool.release(session);
     }
+  }
+
+  /**
+   * @return the plan of the query from an Oak EXPLAIN, null if it fails
+   */
+  private String getQueryPlan(Session session, QueryTemplate template, Map<String, String> values) {
+    try {
+      QueryManager queryManager = session.getWorkspace().getQueryManager();
+      RowIterator rows = template.createExplainQuery(queryManager, session.getValueFactory(), values).execute()
+          .getRows();
+      if (rows.hasNext()) {
+        return rows.nextRow().getValue("plan").getString();
+      }
+    } catch (RepositoryException e) {
+      log.warn("Unable to explain {}: {}", template.getStatement(), e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Borrow a session for one call, or null if the pool has none to give.
+   * @return
+   */
+  private Session borrowSession() {
+    try {
+      return sessionPool.borrow();
+    } catch (RepositoryException e) {
+      log.error("Unable to borrow session: " + e.getMessage(), e);
+    }
+    return null;
+  }
+
+  /**
+   * Pick the first value of each request param the query template
+   * has a {key} placeholder for.
+   * 
+   * @param template
+   * @param params
+   * @return
+   */
+  private Map<String, String> getQueryValues(QueryTemplate template, Map<String, String[]> params) {
+    Map<String, String> values = new HashMap<String, String>();
+    if (params == null) {
+      return values;
+    }
+    for (String name : template.getParameterNames()) {
+      String[] value = params.get(name);
+      if (value != null && value.length > 0) {
+        values.put(name, value[0]);
+      }
+    }
+    return values;
+  }
+
+public List<ObjectNode> queryForJsonObjects(String query, String queryLanguage) {
+   List<ObjectNode> jsonNodes = new ArrayList<>();
+   Session session = borrowSession();
+   if (session == null) {
+       return jsonNodes;
+   }
+   try {
+       NodeIterator nodeIter = this.getNodeIteratorFromJcrQuery(session, query, queryLanguage);
+       if (nodeIter != null) {
+           while (nodeIter.hasNext()) {
+               try {
+                   Node node = nodeIter.nextNode();
+                   jsonNodes.add(Utils.convertNodeToJson(node));
+               } catch (RepositoryException e) {
+                   log.error("Error processing node: " + e.getMessage(), e);
+               }
+           }
+       }
+   } finally {
+       sessionPool.release(session);
+   }
     
     return jsonNodes;
 }
@@ -211,18 +727,34 @@ public List<JSONObject> queryForJsonObjects(String query, String queryLanguage)
    * Simple wrapper that returns a NodeIterator from a SQL query.
    * @return
    */
-  private NodeIterator getNodeIteratorFromJcrQuery(String statement, String language) {
+  private NodeIterator getNodeIteratorFromJcrQuery(Session session, String statement, String language) {
+    return getNodeIteratorFromJcrQuery(session, QueryTemplate.parse(statement, language), null, ExtractPage.ALL);
+  }
+
+  /**
+   * Return a NodeIterator over one page of the query result.
+   * The template's placeholders are bound or filled from values, and the
+   * page is applied by the query engine through setOffset/setLimit.
+   * @return
+   */
+  private NodeIterator getNodeIteratorFromJcrQuery(Session session, QueryTemplate template,
+      Map<String, String> values, ExtractPage page) {
     NodeIterator nodeIter = null;
     try {
-      this.init();
       // Obtain the query manager for the session ...
       QueryManager queryManager = session.getWorkspace().getQueryManager();
-      Query query = queryManager.createQuery(statement, language);
+      Query query = template.createQuery(queryManager, session.getValueFactory(), values);
+      log.debug("query: {} values: {}", template.getStatement(), values);
+      if (page.getOffset() > 0) {
+        query.setOffset(page.getOffset());
+      }
+      if (page.isPaged()) {
+        query.setLimit(page.getLimit());
+      }
       // Execute the query and get the results ...
       QueryResult results = query.execute();
       // Iterate over the nodes in the results ...
       nodeIter = results.getNodes();
-      // session.logout();
     } catch (Exception e) {
       log.error(e.getMessage(), e);
     }
@@ -254,71 +786,72 @@ public List<JSONObject> queryForJsonObjects(String query, String queryLanguage)
   /**
    * Retrieve PageTitles for given sqlQuery.
    */
-  private List<JSONObject> getPageTitles(NodeIterator it) {
+  private List<ObjectNode> getPageTitles(Session session, NodeIterator it) {
     if (it == null) {
       return null;
     }
-    List<JSONObject> jsonList = new ArrayList<JSONObject>();
+    List<ExtractRule> rules = new ArrayList<ExtractRule>();
+    rules.add(new ExtractRule("title", ExtractType.TITLE));
+    rules.add(new ExtractRule("path", ExtractType.PATH));
+    JsonListSink sink = new JsonListSink();
     try {
-      JsonExtractor jsonExtractor = new JsonExtractor(session);
-      jsonExtractor.addRule(new ExtractRule("title", ExtractType.TITLE));
-      jsonExtractor.addRule(new ExtractRule("path", ExtractType.PATH));
-      while (it.hasNext()) {
-        Node node = it.nextNode();
-        JSONObject jsonObject = new JSONObject();
-        jsonObject = jsonExtractor.getJsonObject(node, jsonObject);
-        jsonList.add(jsonObject);
-      }
-    } catch (Exception e) {
+      this.writeExtractedPages(session, it, ExtractPlan.compile(rules), ExtractContext.defaults(), sink);
+    } catch (IOException e) {
       log.error(e.getMessage(), e);
     }
-    return jsonList;
+    return sink.getRecords();
   }
 
-  private List<JSONObject> getDefaultExtract(NodeIterator it) {
+  /**
+   * Deep traversal of each node, written to the sink one node at a time.
+   * @param session
+   * @param it
+   * @param context
+   * @param sink
+   * @return the number of records written
+   * @throws IOException
+   */
+  private int writeDefaultExtract(Session session, NodeIterator it, ExtractContext context, ExtractSink sink) throws IOException {
     if (it == null) {
-      return null;
+      return 0;
     }
-    List<JSONObject> jsonList = new ArrayList<JSONObject>();
-    try {
-      JsonExtractor jsonExtractor = new JsonExtractor(session);
-      List<ExtractRule> parsedRules = new ArrayList<ExtractRule>();
-      parsedRules.add(defaultRule);
-      jsonExtractor.addRules(parsedRules);
-      while (it.hasNext()) {
-        Node node = it.nextNode();
-        jsonList.add(Utils.toJsonObject(jsonExtractor.getJsonObject(node.getPath())));
+    int count = 0;
+    JsonExtractor jsonExtractor = new JsonExtractor(session, null, context);
+    while (it.hasNext()) {
+      ObjectNode jsonNode = jsonExtractor.getJsonObject(it.nextNode());
+      if (jsonNode != null) {
+        sink.accept(jsonNode);
+        count++;
       }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
     }
-    return jsonList;
+    return count;
   }
 
   /**
-   * Process the nodes and apply extract rules using instantiated JsonExtractor.
+   * Process the nodes and apply extract rules using instantiated JsonExtractor,
+   * writing each record to the sink as soon as it is extracted.
+   * @param session
    * @param it
-   * @param rules
-   * @return
+   * @param plan
+   * @param context
+   * @param sink
+   * @return the number of records written
+   * @throws IOException
    */
-  private List<JSONObject> getExtractedPages(NodeIterator it, List<ExtractRule> rules) {
+  private int writeExtractedPages(Session session, NodeIterator it, ExtractPlan plan, ExtractContext context,
+      ExtractSink sink) throws IOException {
     if (it == null) {
-      return null;
+      return 0;
     }
-    List<JSONObject> jsonList = new ArrayList<JSONObject>();
-    try {
-      JsonExtractor jsonExtractor = new JsonExtractor(session);
-      jsonExtractor.addRules(rules);
-      while (it.hasNext()) {
-        Node node = it.nextNode();
-        JSONObject jsonObject = new JSONObject();
-        jsonObject = jsonExtractor.getJsonObject(node, jsonObject);
-        jsonList.add(jsonObject);
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
+    int count = 0;
+    JsonExtractor jsonExtractor = new JsonExtractor(session, plan, context);
+    while (it.hasNext()) {
+      Node node = it.nextNode();
+      ObjectNode jsonObject = jsonExtractor.getJsonObject(node, JsonNodeFactory.instance.objectNode());
+      sink.accept(jsonObject);
+      count++;
     }
-    return jsonList;
+    return count;
   }
 
   public String getJsonString(Node node) {
@@ -384,4 +917,116 @@ public List<JSONObject> queryForJsonObjects(String query, String queryLanguage)
     }
   }
 
-}
\ No newline at end of file
+
+  /**
+   * The query that reads one page: the template, its values and the
+   * offset and limit the query engine applies.
+   */
+  private static final class PagedQuery {
+    private final QueryTemplate template;
+    private final Map<String, String> values;
+    private final ExtractPage page;
+
+    private PagedQuery(QueryTemplate template, Map<String, String> values, ExtractPage page) {
+      this.template = template;
+      this.values = values;
+      this.page = page;
+    }
+  }
+
+  /**
+   * One extract of a batch, run ahead on the shared executor. Its records
+   * are handed to the thread writing the batch through a bounded queue,
+   * so an extract blocks once it is BATCH_RUN_AHEAD records ahead instead
+   * of buffering its whole result.
+   */
+  private final class BatchEntry implements Callable<Void>, ExtractSink {
+    private final String name;
+    private final ExtractConfig config;
+    private final Map<String, String[]> params;
+    private final ExtractMemo memo;
+    private final BlockingQueue<ObjectNode> records = new ArrayBlockingQueue<ObjectNode>(BATCH_RUN_AHEAD);
+    private final CountDownLatch begun = new CountDownLatch(1);
+    private volatile List<ExtractRule> rules = null;
+    private volatile boolean done = false;
+    private volatile String error = null;
+    private volatile String truncated = null;
+
+    private BatchEntry(String name, ExtractConfig config, Map<String, String[]> params, ExtractMemo memo) {
+      this.name = name;
+      this.config = config;
+      this.params = params;
+      this.memo = memo;
+    }
+
+    public Void call() {
+      try {
+        extract(config, params, this, memo, false, null);
+      } catch (IOException | IllegalArgumentException e) {
+        error = e.getMessage();
+      } finally {
+        done = true;
+        begun.countDown();
+        // wakes the writer up early; without room it finds done on its next poll.
+        records.offer(END_OF_ENTRY);
+      }
+      return null;
+    }
+
+    public void begin(List<ExtractRule> rules) {
+      this.rules = rules;
+      begun.countDown();
+    }
+
+    public void accept(ObjectNode record) throws IOException {
+      if (record == null) {
+        return;
+      }
+      try {
+        records.put(record);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Batch extract cancelled.");
+      }
+    }
+
+    public void end(String truncated) {
+      this.truncated = truncated;
+    }
+
+    /**
+     * Write the result to the batch sink while the extract is running.
+     * An extract that fails before its first record is reported as an
+     * error of the batch; one that fails later fails the batch, since
+     * part of its result is already written.
+     */
+    private void drainTo(ExtractBatchSink sink) throws IOException, InterruptedException {
+      begun.await();
+      if (rules == null) {
+        if (error != null) {
+          sink.error(name, error);
+          return;
+        }
+        rules = config.getPlan().getRules();
+      }
+      ExtractSink result = sink.open(name);
+      result.begin(rules);
+      while (true) {
+        boolean finished = done;
+        ObjectNode record = finished ? records.poll() : records.poll(BATCH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (record == END_OF_ENTRY) {
+          continue;
+        }
+        if (record != null) {
+          result.accept(record);
+        } else if (finished) {
+          break;
+        }
+      }
+      if (error != null) {
+        throw new IOException("Batch extract failed: " + error);
+      }
+      result.end(truncated);
+    }
+  }
+}
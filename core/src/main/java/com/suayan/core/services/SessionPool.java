@@ -0,0 +1,35 @@
+package com.suayan.core.services;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * A bounded pool of read-only service sessions.
+ * 
+ * Every session obtained with borrow() or tryBorrow() must be handed
+ * back with release() in a finally block. Idle sessions are refreshed
+ * before they are lent out again, so callers always see current content.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+public interface SessionPool {
+	/**
+	 * Borrow a session, waiting up to the configured timeout
+	 * if all sessions are in use.
+	 * @return a live session
+	 * @throws RepositoryException if no session could be obtained
+	 */
+	public Session borrow() throws RepositoryException;
+	/**
+	 * Borrow a session only if one is available right away.
+	 * @return a live session or null
+	 */
+	public Session tryBorrow();
+	/**
+	 * Return a borrowed session to the pool. Null and unknown
+	 * sessions are ignored.
+	 * @param session
+	 */
+	public void release(Session session);
+}
@@ -0,0 +1,23 @@
+package com.suayan.core.services;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Sizing for the read SessionPool.
+ */
+@ObjectClassDefinition(
+	name = "CCUI Session Pool Configuration", 
+	description = "Sizing for the pool of ccui-root-read-user sessions"
+)
+public @interface SessionPoolConfig {
+	@AttributeDefinition(name = "Max sessions", description = "Maximum number of sessions borrowed at once.", type = AttributeType.INTEGER)
+	int maxSessions() default 20;
+
+	@AttributeDefinition(name = "Max idle sessions", description = "Sessions kept open for reuse once released.", type = AttributeType.INTEGER)
+	int maxIdleSessions() default 8;
+
+	@AttributeDefinition(name = "Borrow timeout", description = "Seconds to wait for a session when all are in use.", type = AttributeType.INTEGER)
+	int borrowTimeoutSeconds() default 30;
+}
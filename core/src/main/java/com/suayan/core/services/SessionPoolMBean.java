@@ -0,0 +1,27 @@
+package com.suayan.core.services;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the SessionPool.
+ */
+@Description("CCUI read session pool")
+public interface SessionPoolMBean {
+	@Description("Sessions currently borrowed")
+	int getActiveSessions();
+
+	@Description("Sessions kept open for reuse")
+	int getIdleSessions();
+
+	@Description("Maximum number of sessions borrowed at once")
+	int getMaxSessions();
+
+	@Description("Total number of sessions borrowed")
+	long getBorrowCount();
+
+	@Description("Total number of sessions logged in")
+	long getLoginCount();
+
+	@Description("Borrow attempts that timed out")
+	long getTimeoutCount();
+}
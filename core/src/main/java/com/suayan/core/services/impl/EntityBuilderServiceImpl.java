@@ -1,9 +1,25 @@
 package com.suayan.core.services.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
@@ -18,6 +34,8 @@ import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -37,10 +55,15 @@ import org.osgi.service.metatype.annotations.Designate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
 import com.day.cq.commons.RangeIterator;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.day.cq.tagging.TagManager;
+import com.suayan.core.services.EntityBuilderMBean;
+import com.suayan.core.services.EntityBuilderScope;
 import com.suayan.core.services.EntityBuilderService;
+import com.suayan.core.services.EntityCache;
+import com.suayan.core.services.EntityIterator;
 import com.suayan.core.services.EntityBuilderServiceConfig;
 import com.suayan.core.sling.SlingQueryStatement;
 
@@ -48,21 +71,38 @@ import com.suayan.core.sling.SlingQueryStatement;
  * A Sling based service implementation of the @EntityBuilderService interface.
  * 
  * Given a list of paths, return a List of entity instances.
+ * 
+ * A parallel toList splits long lists into contiguous slices adapted on
+ * a pool of maxParallelism threads. Each slice has its own service
+ * resolver, as a ResourceResolver must not be shared between threads.
+ * Adapt timings per model type are exposed over JMX.
+ * 
+ * The batch property reads resolve each distinct path once with a single
+ * resolver, for callers that check properties across a navigation tree.
+ * 
+ * toItem and toList adapt through the EntityCache, which reuses the
+ * models of the types it is configured for.
+ * 
+ * Within an EntityBuilderScope, every method on the scope's thread uses
+ * the scope's resolver and leaves it open; worker slices of a parallel
+ * toList still open their own.
  *
  * @author Kyo Suayan
  *
  */
 @Component(service = {
-		EntityBuilderService.class 
+		EntityBuilderService.class,
+		DynamicMBean.class
 	}, 
 	enabled = true, 
 	immediate = true, 
 	configurationPid = "com.suayan.com.core.services.impl.EntityBuilderServiceImpl", 
 	property = {
-				Constants.SERVICE_DESCRIPTION + "=CCUI Entity Builder Service" 
+				Constants.SERVICE_DESCRIPTION + "=CCUI Entity Builder Service",
+				"jmx.objectname=com.suayan.ccui:type=EntityBuilder"
 })
 @Designate(ocd = EntityBuilderServiceConfig.class)
-public class EntityBuilderServiceImpl implements EntityBuilderService {
+public class EntityBuilderServiceImpl extends AnnotatedStandardMBean implements EntityBuilderService, EntityBuilderMBean {
 
 	private static final String ROOT_READ_USER = "ccui-root-read-user";
 	private static final Logger log = LoggerFactory.getLogger(EntityBuilderServiceImpl.class);
@@ -70,6 +110,35 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 	private static final String FAILED_RESOLVER_MESSAGE = "Failed to acquire resourceResolver. ";
 	private static final String XPATH = "xpath";
 
+	private static final PropertyReader<String> STRING_PROPERTY = new PropertyReader<String>() {
+		public String read(ValueMap valueMap, String propertyName) {
+			return valueMap == null ? null : valueMap.get(propertyName, String.class);
+		}
+	};
+
+	// the value is only used as a flag, see pathsHaveProperties.
+	private static final PropertyReader<String> HAS_PROPERTY = new PropertyReader<String>() {
+		public String read(ValueMap valueMap, String propertyName) {
+			String value = STRING_PROPERTY.read(valueMap, propertyName);
+			return StringUtils.isNotBlank(value) ? value : null;
+		}
+	};
+
+	private static final PropertyReader<String[]> MULTI_PROPERTY = new PropertyReader<String[]>() {
+		public String[] read(ValueMap valueMap, String propertyName) {
+			if (valueMap == null || !valueMap.containsKey(propertyName)) {
+				return null;
+			}
+			Object value = valueMap.get(propertyName);
+			if (value instanceof String[]) {
+				return (String[]) value;
+			} else if (value instanceof String) {
+				return new String[] { (String) value };
+			}
+			return null;
+		}
+	};
+
 	@Reference
 	Repository repository;
 
@@ -79,19 +148,55 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 	@Reference
 	private ResourceResolverFactory resourceResolverFactory;
 
+	@Reference
+	EntityCache entityCache;
+
+	private final Map<String, AdaptTiming> adaptTimings = new ConcurrentHashMap<String, AdaptTiming>();
+	private final AtomicLong parallelCount = new AtomicLong();
+	private final ThreadLocal<Scope> scopes = new ThreadLocal<Scope>();
+	private volatile ExecutorService executor = null;
+	private int maxParallelism = 1;
+	private int parallelThreshold = Integer.MAX_VALUE;
+
+	public EntityBuilderServiceImpl() throws NotCompliantMBeanException {
+		super(EntityBuilderMBean.class);
+	}
+
 	@Activate
 	@Modified
 	protected void activate(EntityBuilderServiceConfig ebsConfig) {
 		log.info("CCUI EntityBuilder Service: Activated.");
 		params = new HashMap<String, Object>();
 		params.put(ResourceResolverFactory.SUBSERVICE, ROOT_READ_USER);
+		maxParallelism = Math.max(1, ebsConfig.maxParallelism());
+		parallelThreshold = Math.max(2, ebsConfig.parallelThreshold());
+		shutdownExecutor();
+		if (maxParallelism > 1) {
+			executor = Executors.newFixedThreadPool(maxParallelism, new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ccui-entity-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
 	}
 
 	@Deactivate
 	protected void deactivate(EntityBuilderServiceConfig ebsConfig) {
+		shutdownExecutor();
 		log.info("CCUI Service: Deactivated.");
 	}
 
+	private void shutdownExecutor() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
 	void setResourceResolverFactory(ResourceResolverFactory resourceResolverFactory) {
 		this.resourceResolverFactory = resourceResolverFactory;
 	}
@@ -108,11 +213,11 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		ResourceResolver resourceResolver = null;
 		T item = null;
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			Resource resource = resourceResolver.getResource(path);
 
 			if (resource != null) {
-				item = resource.adaptTo(type);
+				item = entityCache.adapt(resource, type);
 			} else {
 				log.info("null resource for path " + path);
 			}
@@ -132,34 +237,146 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 	 */
 	@Override
 	public <T> List<T> toList(List<String> paths, Class<T> type) {
+		return toList(paths, type, false);
+	}
+
+	/**
+	 * Return a list of materialized beans based on target object type,
+	 * adapted on the pool if parallel and the list is long enough. The
+	 * calling thread adapts the first slice itself, and then any slice
+	 * the pool rejected, failed or did not finish before an interrupt.
+	 * Each pool slice adapts into an array of its own, which is only
+	 * copied into the result once the slice is done.
+	 */
+	@Override
+	public <T> List<T> toList(List<String> paths, Class<T> type, boolean parallel) {
 		List<T> entityList = new ArrayList<>();
 
 		if (paths == null || paths.isEmpty()) {
 			return entityList;
 		}
 
-		ResourceResolver resourceResolver = null;
-		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
-			for (String path : paths) {
-				String resourcePath = path + "/" + JcrConstants.JCR_CONTENT;
-				Resource resource = resourceResolver.getResource(resourcePath);
-
-				if (resource != null) {
-					T entity = resource.adaptTo(type);
-					if (entity != null) {
-						entityList.add(entity);
+		Object[] entities = new Object[paths.size()];
+		ExecutorService currentExecutor = executor;
+		if (parallel && currentExecutor != null && paths.size() >= parallelThreshold) {
+			parallelCount.incrementAndGet();
+			int slice = (paths.size() + maxParallelism - 1) / maxParallelism;
+			List<Future<Object[]>> futures = new ArrayList<Future<Object[]>>();
+			for (int from = slice; from < paths.size(); from += slice) {
+				try {
+					futures.add(currentExecutor.submit(new Materializer<T>(paths, from,
+							Math.min(from + slice, paths.size()), type)));
+				} catch (RejectedExecutionException e) {
+					// the pool is shut down by a configuration change, the slice is adapted below.
+					futures.add(null);
+				}
+			}
+			materialize(paths, 0, Math.min(slice, paths.size()), type, entities, 0);
+			boolean interrupted = false;
+			for (int i = 0; i < futures.size(); i++) {
+				int from = (i + 1) * slice;
+				int to = Math.min(from + slice, paths.size());
+				Future<Object[]> future = futures.get(i);
+				Object[] adapted = null;
+				if (future == null) {
+					log.warn("Paths " + from + " to " + to + " were rejected by the pool, adapting them here.");
+				} else {
+					try {
+						if (!interrupted || future.isDone()) {
+							adapted = future.get();
+						}
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException | CancellationException e) {
+						log.warn("Failed to adapt paths " + from + " to " + to + " on the pool, adapting them here.",
+								e instanceof ExecutionException ? e.getCause() : e);
+					}
+					if (adapted == null) {
+						future.cancel(true);
 					}
+				}
+				if (adapted != null) {
+					System.arraycopy(adapted, 0, entities, from, adapted.length);
 				} else {
+					materialize(paths, from, to, type, entities, 0);
+				}
+			}
+			if (interrupted) {
+				log.warn("Interrupted while adapting " + paths.size() + " paths, finished them on the calling thread.");
+				Thread.currentThread().interrupt();
+			}
+		} else {
+			materialize(paths, 0, paths.size(), type, entities, 0);
+		}
+		for (Object entity : entities) {
+			if (entity != null) {
+				entityList.add(type.cast(entity));
+			}
+		}
+		return entityList;
+	}
+
+	/**
+	 * Resolve the jcr:content of paths[from, to) and then adapt it, with
+	 * a resolver of its own. Entities are stored at their index in paths
+	 * less offset.
+	 */
+	private <T> void materialize(List<String> paths, int from, int to, Class<T> type, Object[] entities,
+			int offset) {
+		ResourceResolver resourceResolver = null;
+		try {
+			resourceResolver = openResolver();
+			Resource[] resources = new Resource[to - from];
+			for (int i = from; i < to; i++) {
+				String resourcePath = paths.get(i) + "/" + JcrConstants.JCR_CONTENT;
+				resources[i - from] = resourceResolver.getResource(resourcePath);
+				if (resources[i - from] == null) {
 					log.debug("null resource for path " + resourcePath);
 				}
 			}
+			long start = System.nanoTime();
+			int adapted = 0;
+			for (int i = from; i < to; i++) {
+				if (resources[i - from] != null) {
+					entities[i - offset] = entityCache.adapt(resources[i - from], type);
+					adapted++;
+				}
+			}
+			getAdaptTiming(type).add(adapted, System.nanoTime() - start);
 		} catch (LoginException e) {
 			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
 		} finally {
 			close(resourceResolver);
 		}
-		return entityList;
+	}
+
+	private AdaptTiming getAdaptTiming(Class<?> type) {
+		AdaptTiming timing = adaptTimings.get(type.getName());
+		if (timing == null) {
+			adaptTimings.putIfAbsent(type.getName(), new AdaptTiming());
+			timing = adaptTimings.get(type.getName());
+		}
+		return timing;
+	}
+
+	@Override
+	public String[] getAdaptTimings() {
+		List<String> timings = new ArrayList<String>();
+		for (Map.Entry<String, AdaptTiming> entry : adaptTimings.entrySet()) {
+			timings.add(entry.getKey() + ": " + entry.getValue());
+		}
+		return timings.toArray(new String[timings.size()]);
+	}
+
+	@Override
+	public long getParallelCount() {
+		return parallelCount.get();
+	}
+
+	@Override
+	public void resetAdaptTimings() {
+		adaptTimings.clear();
+		parallelCount.set(0);
 	}
 
 	/**
@@ -185,7 +402,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		Session session = null;
 		ResourceResolver resourceResolver = null;
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			session = getSession(resourceResolver);
 			if (session == null) {
 				log.debug("entityBuilder's session was null.");
@@ -215,6 +432,27 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		return entityList;
 	}
 
+	/**
+	 * Run the query with the resolver of the current scope, or one of its
+	 * own that the iterator closes, and adapt the nodes as they are read.
+	 */
+	@Override
+	public <T> EntityIterator<T> iterate(SlingQueryStatement sqs, Class<T> type, long offset, long limit) {
+		ResourceResolver resourceResolver = null;
+		try {
+			resourceResolver = openResolver();
+			Session session = getSession(resourceResolver);
+			NodeIterator it = session == null ? null : getNodeIterator(session, sqs, offset, limit);
+			return new LazyEntityIterator<T>(resourceResolver, session, it, type);
+		} catch (LoginException e) {
+			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
+		} catch (RuntimeException e) {
+			close(resourceResolver);
+			throw e;
+		}
+		return new LazyEntityIterator<T>(null, null, null, type);
+	}
+
 	/**
 	 * Implement a query but create and close the session outside of this method.
 	 * 
@@ -260,7 +498,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 
 		Session session = null;
 		try {
-			session = this.slingRepository.loginService(ROOT_READ_USER, null);
+			session = openSession();
 			if (session == null) {
 				throw new Exception("Unable to login session to obtain path");
 			}
@@ -282,7 +520,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 
         Session session = null;
         try {
-            session = this.slingRepository.loginService(ROOT_READ_USER, null);
+            session = openSession();
             if (session == null) {
                 throw new Exception("Unable to login session to obtain path");
             }
@@ -308,6 +546,19 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 	 * @return node iterator
 	 */
 	NodeIterator getNodeIterator(Session session, SlingQueryStatement sqs) {
+		return getNodeIterator(session, sqs, 0, 0);
+	}
+
+	/**
+	 * Return a page of a @SlingQueryStatement's NodeIterator from an existing session.
+	 * 
+	 * @param session session
+	 * @param sqs slingQueryStatement
+	 * @param offset results to skip
+	 * @param limit most results to return, 0 for all
+	 * @return node iterator
+	 */
+	NodeIterator getNodeIterator(Session session, SlingQueryStatement sqs, long offset, long limit) {
 		NodeIterator nodeIter = null;
 		
 		if (sqs == null || StringUtils.isBlank(sqs.getQueryStatement())) {
@@ -317,21 +568,27 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		try {
 			QueryManager queryManager = session.getWorkspace().getQueryManager();
 			if (queryManager != null) {
-				String queryStatement = sqs.compile();
+				String queryStatement = sqs.getQueryStatement();
 				if (StringUtils.isNotBlank(queryStatement)) {
-					Query query = queryManager.createQuery(queryStatement, sqs.getQueryLanguage());
+					Query query = sqs.getTemplate().createQuery(queryManager, session.getValueFactory(), sqs.getParams());
 					// log.trace(">>> createQuery() returns a query ...");					
 					// log.trace(">>> statement: " + query.getStatement());
 					// log.trace(">>> language: " + query.getLanguage());
 					QueryResult results = null;
 					if (query != null) {
+						if (offset > 0) {
+							query.setOffset(offset);
+						}
+						if (limit > 0) {
+							query.setLimit(limit);
+						}
 						results = query.execute();
 						if (results != null) {
 							nodeIter = results.getNodes();
 						}
 					}					
 				} else {
-					log.trace("queryStatement was null from sqs.compile().");
+					log.trace("queryStatement was null from sqs.");
 				}
 			} else {
 				log.trace("QueryManager was null from session workspace.");
@@ -367,9 +624,9 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
         try {
             QueryManager queryManager = session.getWorkspace().getQueryManager();
             if (queryManager != null) {
-                String queryStatement = sqs.compile();
+                String queryStatement = sqs.getQueryStatement();
                 if (StringUtils.isNotBlank(queryStatement)) {
-                    Query query = queryManager.createQuery(queryStatement, sqs.getQueryLanguage());
+                    Query query = sqs.getTemplate().createQuery(queryManager, session.getValueFactory(), sqs.getParams());
                     // log.trace(">>> createQuery() returns a query ...");
                     // log.trace(">>> statement: " + query.getStatement());
                     // log.trace(">>> language: " + query.getLanguage());
@@ -381,7 +638,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
                         }
                     }
                 } else {
-                    log.trace("queryStatement was null from sqs.compile().");
+                    log.trace("queryStatement was null from sqs.");
                 }
             } else {
                 log.trace("QueryManager was null from session workspace.");
@@ -405,7 +662,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		ResourceResolver resourceResolver = null;
 		List<T> entityList = new ArrayList<>();
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			TagManager tagManager = resourceResolver.adaptTo(TagManager.class);
 			String[] channelArray = new String[1];
 			channelArray[0] = tagName;
@@ -445,13 +702,10 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 			return false;
 		}
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			Resource resource = resourceResolver.getResource(path);
 			if (resource != null) {
-				String value = resource.getValueMap().get(propertyName, String.class);
-				if (StringUtils.isNotBlank(value)) {
-					hasProperty = true;
-				}
+				hasProperty = HAS_PROPERTY.read(resource.getValueMap(), propertyName) != null;
 			}
 		} catch (LoginException e) {
 			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
@@ -470,10 +724,10 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 			return null;
 		}
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			Resource resource = resourceResolver.getResource(path);
 			if (resource != null) {
-				return resource.getValueMap().get(propertyName, String.class);
+				return STRING_PROPERTY.read(resource.getValueMap(), propertyName);
 			}
 		} catch (LoginException e) {
 			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
@@ -489,27 +743,79 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 			return null;
 		}
 		try {
-			resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+			resourceResolver = openResolver();
 			Resource resource = resourceResolver.getResource(path);
 			if (resource != null) {
+				return MULTI_PROPERTY.read(resource.getValueMap(), propertyName);
+			}
+		} catch (LoginException e) {
+			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
+		} finally {
+			close(resourceResolver);
+		}
+		return null;
+	}
+
+	public Map<String, Set<String>> pathsHaveProperties(Map<String, ? extends Collection<String>> properties) {
+		Map<String, Set<String>> result = new LinkedHashMap<String, Set<String>>();
+		for (Map.Entry<String, Map<String, String>> entry : readProperties(properties, HAS_PROPERTY).entrySet()) {
+			result.put(entry.getKey(), entry.getValue().keySet());
+		}
+		return result;
+	}
+
+	public Map<String, Map<String, String>> getResourceProperties(Map<String, ? extends Collection<String>> properties) {
+		return readProperties(properties, STRING_PROPERTY);
+	}
+
+	public Map<String, Map<String, String[]>> getResourceMultiProperties(
+			Map<String, ? extends Collection<String>> properties) {
+		return readProperties(properties, MULTI_PROPERTY);
+	}
+
+	/**
+	 * Resolve each path once, with one resolver, and read its properties.
+	 * 
+	 * @param properties the property names, by path
+	 * @param reader reads one value, null if there is none
+	 * @return the values, by property name and path, in the order given
+	 */
+	private <V> Map<String, Map<String, V>> readProperties(Map<String, ? extends Collection<String>> properties,
+			PropertyReader<V> reader) {
+		Map<String, Map<String, V>> result = new LinkedHashMap<String, Map<String, V>>();
+		if (properties == null || properties.isEmpty()) {
+			return result;
+		}
+		ResourceResolver resourceResolver = null;
+		try {
+			resourceResolver = openResolver();
+			for (Map.Entry<String, ? extends Collection<String>> entry : properties.entrySet()) {
+				String path = entry.getKey();
+				if (StringUtils.isBlank(path) || entry.getValue() == null || entry.getValue().isEmpty()) {
+					continue;
+				}
+				Resource resource = resourceResolver.getResource(path);
+				if (resource == null) {
+					continue;
+				}
 				ValueMap valueMap = resource.getValueMap();
-				if (valueMap != null && valueMap.containsKey(propertyName)) {
-					Object value = valueMap.get(propertyName);
-					if (value instanceof String[]) {
-						return (String[]) value;
-					} else if (value instanceof String) {
-						return new String[] { (String) value };
-					} else if (value instanceof String) {
-						return new String[] { (String) value };
+				Map<String, V> values = new LinkedHashMap<String, V>();
+				for (String propertyName : entry.getValue()) {
+					V value = StringUtils.isBlank(propertyName) ? null : reader.read(valueMap, propertyName);
+					if (value != null) {
+						values.put(propertyName, value);
 					}
 				}
+				if (!values.isEmpty()) {
+					result.put(path, values);
+				}
 			}
 		} catch (LoginException e) {
 			log.debug(FAILED_RESOLVER_MESSAGE + e.getMessage());
 		} finally {
 			close(resourceResolver);
 		}
-		return null;
+		return result;
 	}
 
 	/**
@@ -542,7 +848,7 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		log.trace("query= " + query);
 		if (slingQueryStatement != null) {
 			try {
-				resourceResolver = resourceResolverFactory.getServiceResourceResolver(params);
+				resourceResolver = openResolver();
 				session = getSession(resourceResolver);
 				// Use internalQuery() so we could iterate through
 				// the results without the session getting shut down
@@ -584,8 +890,67 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 		return "/jcr:root" + path + "//element(*,nt:unstructured)";		
 	}
 	
+	/**
+	 * The resolver of the scope open on this thread, or a new one that
+	 * the caller closes.
+	 */
+	private ResourceResolver openResolver() throws LoginException {
+		Scope scope = scopes.get();
+		if (scope != null) {
+			return scope.getResolver();
+		}
+		return resourceResolverFactory.getServiceResourceResolver(params);
+	}
+
+	/**
+	 * The session of the scope open on this thread, or a new one that
+	 * the caller logs out.
+	 */
+	private Session openSession() throws RepositoryException {
+		Scope scope = scopes.get();
+		if (scope == null) {
+			return this.slingRepository.loginService(ROOT_READ_USER, null);
+		}
+		try {
+			return getSession(scope.getResolver());
+		} catch (LoginException e) {
+			throw new RepositoryException(FAILED_RESOLVER_MESSAGE + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if resolver belongs to the scope open on this thread
+	 */
+	private boolean isScoped(ResourceResolver resolver) {
+		Scope scope = scopes.get();
+		return scope != null && scope.resolver != null && scope.resolver == resolver;
+	}
+
+	/**
+	 * @return true if session belongs to the scope open on this thread
+	 */
+	private boolean isScoped(Session session) {
+		Scope scope = scopes.get();
+		return scope != null && scope.resolver != null && scope.resolver.isLive()
+				&& getSession(scope.resolver) == session;
+	}
+
+	@Override
+	public EntityBuilderScope openScope() {
+		Scope scope = scopes.get();
+		if (scope == null) {
+			scope = new Scope();
+			scopes.set(scope);
+		}
+		scope.depth++;
+		return scope;
+	}
+
 	private void close(ResourceResolver resResolver) {
 		// log.trace("close(resourceResolver);");
+		if (isScoped(resResolver)) {
+			return;
+		}
 		if (resResolver != null && resResolver.isLive()) {
 			resResolver.close();
 		}
@@ -593,8 +958,156 @@ public class EntityBuilderServiceImpl implements EntityBuilderService {
 	
 	private void logout(Session sess) {
 		// log.trace("logout(session);");
-		if (sess != null && sess.isLive()) {
+		if (sess != null && sess.isLive() && !isScoped(sess)) {
 			sess.logout();
 		}
 	}
+
+	/**
+	 * The scope open on one thread, with its resolver once logged in.
+	 */
+	private final class Scope implements EntityBuilderScope {
+		private final Thread thread = Thread.currentThread();
+		private ResourceResolver resolver;
+		private int depth = 0;
+
+		private ResourceResolver getResolver() throws LoginException {
+			if (resolver == null || !resolver.isLive()) {
+				resolver = resourceResolverFactory.getServiceResourceResolver(params);
+			}
+			return resolver;
+		}
+
+		@Override
+		public void close() {
+			if (Thread.currentThread() != thread || depth == 0) {
+				log.warn("EntityBuilderScope closed twice or on another thread.");
+				return;
+			}
+			if (--depth > 0) {
+				return;
+			}
+			scopes.remove();
+			if (resolver != null && resolver.isLive()) {
+				resolver.close();
+			}
+			resolver = null;
+		}
+	}
+
+	/**
+	 * Adapts the next node that resolves and adapts when asked for it, and
+	 * releases its resolver once exhausted or closed.
+	 */
+	private final class LazyEntityIterator<T> implements EntityIterator<T> {
+		private final ResourceResolver resolver;
+		private final Session session;
+		private final NodeIterator it;
+		private final Class<T> type;
+		private T next;
+		private boolean closed = false;
+
+		private LazyEntityIterator(ResourceResolver resolver, Session session, NodeIterator it, Class<T> type) {
+			this.resolver = resolver;
+			this.session = session;
+			this.it = it;
+			this.type = type;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !closed && it != null && it.hasNext()) {
+				try {
+					Resource resource = resolver.getResource(it.nextNode().getPath());
+					if (resource != null) {
+						next = resource.adaptTo(type);
+					}
+				} catch (RepositoryException e) {
+					log.debug("encountered exception with query", e);
+				}
+			}
+			if (next == null) {
+				close();
+			}
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T entity = next;
+			next = null;
+			return entity;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			logout(session);
+			EntityBuilderServiceImpl.this.close(resolver);
+		}
+	}
+
+	/**
+	 * One slice of a parallel toList.
+	 */
+	private final class Materializer<T> implements Callable<Object[]> {
+		private final List<String> paths;
+		private final int from;
+		private final int to;
+		private final Class<T> type;
+
+		private Materializer(List<String> paths, int from, int to, Class<T> type) {
+			this.paths = paths;
+			this.from = from;
+			this.to = to;
+			this.type = type;
+		}
+
+		/**
+		 * @return the entities of paths[from, to)
+		 */
+		public Object[] call() {
+			Object[] entities = new Object[to - from];
+			materialize(paths, from, to, type, entities, from);
+			return entities;
+		}
+	}
+
+	/**
+	 * Reads one property value of a resource.
+	 */
+	private interface PropertyReader<V> {
+		V read(ValueMap valueMap, String propertyName);
+	}
+
+	/**
+	 * Entities adapted to one type and the time it took.
+	 */
+	private static final class AdaptTiming {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+
+		private void add(int adapted, long elapsed) {
+			count.addAndGet(adapted);
+			nanos.addAndGet(elapsed);
+		}
+
+		@Override
+		public String toString() {
+			long n = count.get();
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos.get());
+			return n + " adapted in " + millis + "ms, " + (n == 0 ? 0 : nanos.get() / n / 1000) + "us each";
+		}
+	}
 }
@@ -0,0 +1,326 @@
+package com.suayan.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.suayan.core.services.EntityCache;
+import com.suayan.core.services.EntityCacheConfig;
+import com.suayan.core.services.EntityCacheMBean;
+
+/**
+ * A bounded LRU cache of adapted models.
+ *
+ * Resource changes under the observed paths (/content by default), local
+ * or from other cluster instances, drop every model whose path contains
+ * the changed path, or is contained by it. The keys are also indexed by
+ * path in a sorted map, so a change finds the entries of its subtree and
+ * of its ancestors without scanning the whole cache. A model is only
+ * stored if no change was observed while it was adapted. The last
+ * modified date of the resource guards against changes that were not
+ * observed.
+ * Counters are exposed over JMX as com.suayan.ccui:type=EntityCache.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(
+	service = { EntityCache.class, ResourceChangeListener.class, DynamicMBean.class },
+	immediate = true,
+	property = {
+		ResourceChangeListener.PATHS + "=/content",
+		ResourceChangeListener.CHANGES + "=ADDED",
+		ResourceChangeListener.CHANGES + "=CHANGED",
+		ResourceChangeListener.CHANGES + "=REMOVED",
+		"jmx.objectname=com.suayan.ccui:type=EntityCache"
+	}
+)
+@Designate(ocd = EntityCacheConfig.class)
+public class EntityCacheImpl extends AnnotatedStandardMBean
+		implements EntityCache, ResourceChangeListener, ExternalResourceChangeListener, EntityCacheMBean {
+
+	private static final String[] MODIFIED_PROPERTIES = { "cq:lastModified", "jcr:lastModified" };
+	private static final Logger log = LoggerFactory.getLogger(EntityCacheImpl.class);
+
+	// access ordered, guarded by itself.
+	private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	// the keys of entries by path, guarded by entries.
+	private final TreeMap<String, Set<Key>> keysByPath = new TreeMap<String, Set<Key>>();
+	// incremented on every observed change.
+	private final AtomicLong generation = new AtomicLong();
+	private final Map<String, TypeStats> typeStats = new ConcurrentHashMap<String, TypeStats>();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private volatile boolean enabled = false;
+	private volatile int maxEntries = 0;
+	private volatile Set<String> types = Collections.emptySet();
+
+	public EntityCacheImpl() throws NotCompliantMBeanException {
+		super(EntityCacheMBean.class);
+	}
+
+	@Activate
+	@Modified
+	protected void activate(EntityCacheConfig config) {
+		maxEntries = Math.max(0, config.maxEntries());
+		Set<String> names = new HashSet<String>();
+		if (config.types() != null) {
+			for (String name : config.types()) {
+				if (name != null && !name.trim().isEmpty()) {
+					names.add(name.trim());
+				}
+			}
+		}
+		types = Collections.unmodifiableSet(names);
+		enabled = config.enabled() && maxEntries > 0 && !types.isEmpty();
+		clear();
+		typeStats.clear();
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		enabled = false;
+		clear();
+	}
+
+	@Override
+	public <T> T adapt(Resource resource, Class<T> type) {
+		if (resource == null) {
+			return null;
+		}
+		if (!enabled || !types.contains(type.getName())) {
+			return resource.adaptTo(type);
+		}
+		Key key = new Key(resource.getPath(), type.getName());
+		long revision = getRevision(resource);
+		TypeStats stats = getTypeStats(type.getName());
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.revision == revision) {
+			stats.hits.incrementAndGet();
+			return type.cast(entry.model);
+		}
+		stats.misses.incrementAndGet();
+		long startGeneration = generation.get();
+		T model = resource.adaptTo(type);
+		if (model != null) {
+			store(key, new Entry(model, revision), startGeneration);
+		}
+		return model;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			keysByPath.clear();
+		}
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+		generation.incrementAndGet();
+		synchronized (entries) {
+			if (entries.isEmpty()) {
+				return;
+			}
+			for (ResourceChange change : changes) {
+				String path = change.getPath();
+				if (path == null) {
+					continue;
+				}
+				// the path and its descendants sort between prefix and the next character after '/'.
+				String prefix = path.endsWith("/") ? path : path + "/";
+				SortedMap<String, Set<Key>> subtree = keysByPath.subMap(prefix,
+						prefix.substring(0, prefix.length() - 1) + "0");
+				for (Set<Key> keys : subtree.values()) {
+					invalidate(keys, path);
+				}
+				subtree.clear();
+				for (int i = path.length(); i >= 0; i = path.lastIndexOf('/', i - 1)) {
+					String ancestor = i == 0 ? "/" : path.substring(0, i);
+					Set<Key> keys = keysByPath.remove(ancestor);
+					if (keys != null) {
+						invalidate(keys, path);
+					}
+					if (i == 0) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the entries of keys, which are already out of keysByPath.
+	 */
+	private void invalidate(Set<Key> keys, String changedPath) {
+		for (Key key : keys) {
+			log.debug("Entity invalidated by {}: {}", changedPath, key.path);
+			entries.remove(key);
+			invalidationCount.incrementAndGet();
+		}
+	}
+
+	private void store(Key key, Entry entry, long startGeneration) {
+		synchronized (entries) {
+			// a change may have been observed while the model was adapted.
+			if (!enabled || generation.get() != startGeneration) {
+				return;
+			}
+			entries.put(key, entry);
+			Set<Key> keys = keysByPath.get(key.path);
+			if (keys == null) {
+				keys = new HashSet<Key>();
+				keysByPath.put(key.path, keys);
+			}
+			keys.add(key);
+			Iterator<Key> eldest = entries.keySet().iterator();
+			while (entries.size() > maxEntries && eldest.hasNext()) {
+				Key evicted = eldest.next();
+				eldest.remove();
+				Set<Key> evictedKeys = keysByPath.get(evicted.path);
+				if (evictedKeys != null && evictedKeys.remove(evicted) && evictedKeys.isEmpty()) {
+					keysByPath.remove(evicted.path);
+				}
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the last modified time of the resource, 0 if it has none
+	 */
+	private static long getRevision(Resource resource) {
+		ValueMap properties = resource.getValueMap();
+		if (properties == null) {
+			return 0;
+		}
+		for (String name : MODIFIED_PROPERTIES) {
+			Calendar modified = properties.get(name, Calendar.class);
+			if (modified != null) {
+				return modified.getTimeInMillis();
+			}
+		}
+		return 0;
+	}
+
+	private TypeStats getTypeStats(String type) {
+		TypeStats stats = typeStats.get(type);
+		if (stats == null) {
+			typeStats.putIfAbsent(type, new TypeStats());
+			stats = typeStats.get(type);
+		}
+		return stats;
+	}
+
+	@Override
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public String[] getTypeHitRates() {
+		List<String> rates = new ArrayList<String>();
+		for (Map.Entry<String, TypeStats> entry : typeStats.entrySet()) {
+			rates.add(entry.getKey() + ": " + entry.getValue());
+		}
+		return rates.toArray(new String[rates.size()]);
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	@Override
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	private static final class Key {
+		private final String path;
+		private final String type;
+
+		private Key(String path, String type) {
+			this.path = path;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return path.equals(other.path) && type.equals(other.type);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * path.hashCode() + type.hashCode();
+		}
+	}
+
+	private static final class Entry {
+		private final Object model;
+		private final long revision;
+
+		private Entry(Object model, long revision) {
+			this.model = model;
+			this.revision = revision;
+		}
+	}
+
+	/**
+	 * Hits and misses of one model type.
+	 */
+	private static final class TypeStats {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+
+		@Override
+		public String toString() {
+			long h = hits.get();
+			long total = h + misses.get();
+			return h + " hits, " + (total - h) + " misses, " + (total == 0 ? 0 : h * 100 / total) + "% hit rate";
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package com.suayan.core.services.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.suayan.core.extractor.ExtractFormat;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.services.ExtractJob;
+import com.suayan.core.services.ExtractJobService;
+import com.suayan.core.services.ExtractJobServiceConfig;
+import com.suayan.core.services.ScannerService;
+
+/**
+ * Runs extract jobs on a pool of maxConcurrentJobs threads with a queue
+ * of maxQueuedJobs, separate from the executor the ScannerService uses
+ * for parallel extracts.
+ *
+ * Each job streams its records to a temporary file as they are extracted,
+ * so memory use does not grow with the result. Finished jobs and their
+ * files are dropped after retentionMinutes, and all of them when the
+ * component is deactivated.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(service = ExtractJobService.class,
+	immediate = true,
+	property = {
+		Constants.SERVICE_DESCRIPTION + "=CCUI Extract Job Service"
+})
+@Designate(ocd = ExtractJobServiceConfig.class)
+public class ExtractJobServiceImpl implements ExtractJobService {
+
+	private static final String JOB_DIRECTORY = "ccui-extract-jobs";
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+	private static final Logger log = LoggerFactory.getLogger(ExtractJobServiceImpl.class);
+
+	@Reference
+	ScannerService scanner;
+
+	private final Map<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+	private ThreadPoolExecutor executor;
+	private File directory;
+	private long retentionMillis;
+
+	@Activate
+	protected void activate(ExtractJobServiceConfig config) {
+		int maxConcurrentJobs = Math.max(1, config.maxConcurrentJobs());
+		retentionMillis = TimeUnit.MINUTES.toMillis(Math.max(1, config.retentionMinutes()));
+		directory = new File(System.getProperty("java.io.tmpdir"), JOB_DIRECTORY);
+		executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, config.maxQueuedJobs())), new ThreadFactory() {
+					private final AtomicInteger counter = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "ccui-extract-job-" + counter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		log.info("CCUI Extract Job Service: Activated with {} concurrent jobs.", maxConcurrentJobs);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		for (Job job : jobs.values()) {
+			job.getProgress().cancel();
+		}
+		executor.shutdownNow();
+		try {
+			// a running job still writes to its file until it sees the cancel.
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				log.warn("CCUI Extract Job Service: Jobs still running after {} seconds.", SHUTDOWN_TIMEOUT_SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Job job : jobs.values()) {
+			job.delete();
+		}
+		jobs.clear();
+	}
+
+	@Override
+	public ExtractJob submit(String configPath, JSONObject query, Map<String, String[]> params, ExtractFormat format) {
+		if (query == null && StringUtils.isEmpty(configPath)) {
+			throw new IllegalArgumentException("Please provide a conf parameter or a query.");
+		}
+		expire();
+		Job job = new Job(configPath, query, params, format == null ? ExtractFormat.JSON : format);
+		jobs.put(job.getId(), job);
+		try {
+			executor.execute(job);
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw new IllegalStateException("Too many extract jobs are queued, try again later.");
+		}
+		return job;
+	}
+
+	@Override
+	public ExtractJob getJob(String id) {
+		expire();
+		return id == null ? null : jobs.get(id);
+	}
+
+	@Override
+	public InputStream openResult(String id) throws IOException {
+		Job job = (Job) getJob(id);
+		if (job == null || job.getState() != ExtractJob.State.SUCCEEDED) {
+			return null;
+		}
+		return new FileInputStream(job.file);
+	}
+
+	@Override
+	public ExtractJob cancel(String id) {
+		Job job = (Job) getJob(id);
+		if (job != null && job.cancel()) {
+			executor.remove(job);
+		}
+		return job;
+	}
+
+	/**
+	 * Drop the jobs finished longer than the retention ago.
+	 */
+	private void expire() {
+		long oldest = System.currentTimeMillis() - retentionMillis;
+		Iterator<Job> it = jobs.values().iterator();
+		while (it.hasNext()) {
+			Job job = it.next();
+			if (job.getState().isDone() && job.getFinishTime() < oldest) {
+				it.remove();
+				job.delete();
+			}
+		}
+	}
+
+	/**
+	 * One extract, writing its result to a file of its own.
+	 */
+	private final class Job implements ExtractJob, Runnable {
+		private final String id = UUID.randomUUID().toString();
+		private final String configPath;
+		private final JSONObject query;
+		private final Map<String, String[]> params;
+		private final ExtractFormat format;
+		private final ExtractProgress progress = new ExtractProgress();
+		private final long submitTime = System.currentTimeMillis();
+		private volatile File file;
+		private State state = State.QUEUED;
+		private String error;
+		private long finishTime = 0;
+
+		private Job(String configPath, JSONObject query, Map<String, String[]> params, ExtractFormat format) {
+			this.configPath = configPath;
+			this.query = query;
+			// the request map is not valid once the request is done.
+			this.params = params == null ? new HashMap<String, String[]>() : new HashMap<String, String[]>(params);
+			this.format = format;
+		}
+
+		public void run() {
+			if (!start()) {
+				return;
+			}
+			try {
+				directory.mkdirs();
+				file = File.createTempFile(id, "." + format.getExtension(), directory);
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+				try {
+					Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+					if (query != null) {
+						scanner.extractByJsonObject(query, params, format.createSink(out, w), progress);
+					} else {
+						scanner.extractByJsonConfig(configPath, params, format.createSink(out, w), progress);
+					}
+					w.close();
+				} finally {
+					out.close();
+				}
+				finish(progress.isCancelled() ? State.CANCELLED : State.SUCCEEDED, null);
+			} catch (Exception e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				if (progress.isCancelled()) {
+					finish(State.CANCELLED, null);
+				} else {
+					log.error("Extract job " + id + " failed: " + e.getMessage());
+					finish(State.FAILED, StringUtils.defaultString(e.getMessage(), e.getClass().getSimpleName()));
+				}
+			} finally {
+				// an Error must not leave the job running forever.
+				if (getState() == State.RUNNING) {
+					finish(State.FAILED, "The extract job failed.");
+				}
+			}
+		}
+
+		private synchronized boolean start() {
+			if (state != State.QUEUED) {
+				return false;
+			}
+			state = State.RUNNING;
+			return true;
+		}
+
+		private synchronized void finish(State state, String error) {
+			this.state = state;
+			this.error = error;
+			this.finishTime = System.currentTimeMillis();
+			if (state != State.SUCCEEDED) {
+				delete();
+			}
+		}
+
+		/**
+		 * @return true if the job was still queued
+		 */
+		private synchronized boolean cancel() {
+			if (state.isDone()) {
+				return false;
+			}
+			progress.cancel();
+			if (state == State.QUEUED) {
+				finish(State.CANCELLED, null);
+				return true;
+			}
+			return false;
+		}
+
+		private synchronized void delete() {
+			if (file != null && file.exists() && !file.delete()) {
+				log.warn("Unable to delete extract job file " + file.getPath());
+			}
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public synchronized State getState() {
+			return state;
+		}
+
+		public ExtractFormat getFormat() {
+			return format;
+		}
+
+		public ExtractProgress getProgress() {
+			return progress;
+		}
+
+		public synchronized String getError() {
+			return error;
+		}
+
+		public long getSubmitTime() {
+			return submitTime;
+		}
+
+		public synchronized long getFinishTime() {
+			return finishTime;
+		}
+	}
+}
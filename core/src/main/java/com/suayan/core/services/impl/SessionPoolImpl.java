@@ -0,0 +1,199 @@
+package com.suayan.core.services.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.suayan.core.services.SessionPool;
+import com.suayan.core.services.SessionPoolConfig;
+import com.suayan.core.services.SessionPoolMBean;
+
+/**
+ * A Semaphore bounded pool of ccui-root-read-user sessions.
+ *
+ * Released sessions are kept open up to maxIdleSessions and refreshed
+ * when borrowed again. Active and idle counts are exposed over JMX.
+ *
+ * @author Kyo Suayan
+ *
+ */
+@Component(service = {
+		SessionPool.class,
+		DynamicMBean.class
+	},
+	immediate = true,
+	property = {
+		Constants.SERVICE_DESCRIPTION + "=CCUI Read Session Pool",
+		"jmx.objectname=com.suayan.ccui:type=SessionPool"
+})
+@Designate(ocd = SessionPoolConfig.class)
+public class SessionPoolImpl extends AnnotatedStandardMBean implements SessionPool, SessionPoolMBean {
+
+	private static final String ROOT_READ_USER = "ccui-root-read-user";
+	private static final Logger log = LoggerFactory.getLogger(SessionPoolImpl.class);
+
+	@Reference
+	SlingRepository slingRepository;
+
+	private final ConcurrentLinkedDeque<Session> idle = new ConcurrentLinkedDeque<>();
+	private final Set<Session> borrowed = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong loginCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private Semaphore permits;
+	private int maxSessions;
+	private int maxIdleSessions;
+	private int borrowTimeoutSeconds;
+	private volatile boolean closed = false;
+
+	public SessionPoolImpl() throws NotCompliantMBeanException {
+		super(SessionPoolMBean.class);
+	}
+
+	@Activate
+	protected void activate(SessionPoolConfig config) {
+		maxSessions = Math.max(1, config.maxSessions());
+		maxIdleSessions = Math.max(0, config.maxIdleSessions());
+		borrowTimeoutSeconds = Math.max(0, config.borrowTimeoutSeconds());
+		permits = new Semaphore(maxSessions, true);
+		closed = false;
+		log.info("CCUI Session Pool: Activated with {} sessions.", maxSessions);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		closed = true;
+		Session session;
+		while ((session = idle.pollFirst()) != null) {
+			logout(session);
+		}
+		if (!borrowed.isEmpty()) {
+			log.warn("CCUI Session Pool: {} sessions still borrowed on deactivate.", borrowed.size());
+		}
+	}
+
+	@Override
+	public Session borrow() throws RepositoryException {
+		try {
+			if (!permits.tryAcquire(borrowTimeoutSeconds, TimeUnit.SECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new RepositoryException("No session available within " + borrowTimeoutSeconds + "s.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RepositoryException("Interrupted while waiting for a session.", e);
+		}
+		return open();
+	}
+
+	@Override
+	public Session tryBorrow() {
+		if (!permits.tryAcquire()) {
+			return null;
+		}
+		try {
+			return open();
+		} catch (RepositoryException e) {
+			log.debug("Unable to open pooled session: " + e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public void release(Session session) {
+		if (session == null || !borrowed.remove(session)) {
+			return;
+		}
+		if (session.isLive() && !closed && idle.size() < maxIdleSessions) {
+			idle.offerFirst(session);
+		} else {
+			logout(session);
+		}
+		permits.release();
+	}
+
+	/**
+	 * Take an idle session or login a new one. The caller holds a permit,
+	 * which is given back if no session can be opened.
+	 */
+	private Session open() throws RepositoryException {
+		Session session = null;
+		try {
+			session = idle.pollFirst();
+			while (session != null && !session.isLive()) {
+				session = idle.pollFirst();
+			}
+			if (session != null) {
+				// pick up changes made since the session was last used.
+				session.refresh(false);
+			} else {
+				session = slingRepository.loginService(ROOT_READ_USER, null);
+				loginCount.incrementAndGet();
+			}
+		} catch (RepositoryException | RuntimeException e) {
+			logout(session);
+			permits.release();
+			throw e;
+		}
+		borrowed.add(session);
+		borrowCount.incrementAndGet();
+		return session;
+	}
+
+	private void logout(Session session) {
+		if (session != null && session.isLive()) {
+			session.logout();
+		}
+	}
+
+	@Override
+	public int getActiveSessions() {
+		return borrowed.size();
+	}
+
+	@Override
+	public int getIdleSessions() {
+		return idle.size();
+	}
+
+	@Override
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	@Override
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	@Override
+	public long getLoginCount() {
+		return loginCount.get();
+	}
+
+	@Override
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+}
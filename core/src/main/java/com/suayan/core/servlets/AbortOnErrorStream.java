@@ -0,0 +1,58 @@
+package com.suayan.core.servlets;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.suayan.core.extractor.ExtractProgress;
+
+/**
+ * Cancels an extract as soon as writing its response fails, which is
+ * how a client disconnect shows up in the servlet API. The scan then
+ * stops at the next node, including the query result still being read
+ * by parallel workers, instead of extracting for nobody.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+final class AbortOnErrorStream extends FilterOutputStream {
+
+    private final ExtractProgress progress;
+
+    AbortOnErrorStream(OutputStream out, ExtractProgress progress) {
+        super(out);
+        this.progress = progress;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw abort(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw abort(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw abort(e);
+        }
+    }
+
+    private IOException abort(IOException e) {
+        progress.cancel();
+        return e;
+    }
+}
@@ -0,0 +1,94 @@
+package com.suayan.core.servlets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+/**
+ * Opens the body of an extract response, gzip compressed when the
+ * client accepts it.
+ * 
+ * The compressed stream wraps the response output stream, so records
+ * are compressed as they are written and the body is never held in
+ * memory. A flush by the sink also flushes the compressor, so streamed
+ * formats still reach the client while the extract runs.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+final class CompressedResponse {
+
+    static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private CompressedResponse() {
+    }
+
+    /**
+     * @param request
+     * @param response
+     * @return the stream for the body; closing it finishes the compressed stream
+     * @throws IOException
+     */
+    static OutputStream openStream(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws IOException {
+        response.addHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            return response.getOutputStream();
+        }
+        response.setHeader("Content-Encoding", GZIP);
+        return new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE, true);
+    }
+
+    /**
+     * @param out a stream from openStream()
+     * @param response
+     * @return a UTF-8 writer over out for the text formats
+     */
+    static Writer openWriter(OutputStream out, SlingHttpServletResponse response) {
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding request header
+     * @return true if gzip, or any encoding, is accepted with a non-zero quality
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = Math.max(gzip, quality);
+            } else if ("*".equals(name)) {
+                any = quality;
+            }
+        }
+        return gzip > 0 || (gzip < 0 && any > 0);
+    }
+}
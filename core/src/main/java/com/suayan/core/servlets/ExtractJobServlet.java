@@ -0,0 +1,196 @@
+package com.suayan.core.servlets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ServiceScope;
+
+import com.suayan.core.extractor.ExtractFormat;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.services.ExtractJob;
+import com.suayan.core.services.ExtractJobService;
+/**
+ * An API endpoint for extracts too large to wait for in one request.
+ * 
+ * Submit a job, by config name or by posting a query object:
+ * POST /bin/api/extract/jobs.json?conf=name_of_json_config&format=csv
+ * The 202 response holds the job status and its Location header the
+ * status URL. format is json, csv, ndjson or ccol, json by default; any
+ * other format is a 400.
+ * 
+ * Poll its progress:
+ * GET /bin/api/extract/jobs.json?id=...
+ * {"id", "state", "format", "scanned", "emitted", "total", "elapsedMillis",
+ * "etaMillis", "truncated", "cursor", "error"}. total and etaMillis are -1
+ * when the query result size is not known. truncated holds the reason a
+ * succeeded job stopped short of the whole result, such as its maxMillis
+ * budget. cursor resumes a paged job at its next page (see ExtractPage).
+ * 
+ * Download the result once the state is SUCCEEDED:
+ * GET /bin/api/extract/jobs.result.json?id=...
+ * 
+ * Cancel it:
+ * DELETE /bin/api/extract/jobs.json?id=...
+ * 
+ * A 503 response means too many jobs are queued. Jobs are kept on the
+ * instance that ran them, so polls must reach the same instance.
+ * 
+ * @author Kyo Suayan
+ *
+ */        
+@Component(
+    service = Servlet.class,
+    property = {
+        "service.description=Extract Job Servlet",
+        "service.vendor=CCUI",
+        "sling.servlet.extensions=json",
+        "sling.servlet.paths=/bin/api/extract/jobs"
+    },
+    scope = ServiceScope.SINGLETON
+)    
+public class ExtractJobServlet extends SlingAllMethodsServlet {
+    private static final long serialVersionUID = 78634125L;
+    private static final String JOBS_PATH = "/bin/api/extract/jobs";
+    private static final String RESULT_SELECTOR = "result";
+
+    @Reference
+    ExtractJobService jobService;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+
+		String id = request.getParameter("id");
+		ExtractJob job = jobService.getJob(id);
+		if (job == null) {
+			writeError(response, SlingHttpServletResponse.SC_NOT_FOUND, "Unknown extract job.");
+		} else if (ArrayUtils.contains(request.getRequestPathInfo().getSelectors(), RESULT_SELECTOR)) {
+			writeResult(request, response, job);
+		} else {
+			writeStatus(response, job);
+		}
+	}
+
+	@Override
+	protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+
+		String formatParameter = request.getParameter("format");
+		ExtractFormat format = StringUtils.isEmpty(formatParameter) ? ExtractFormat.JSON
+				: ExtractFormat.forExtension(formatParameter);
+		if (format == null) {
+			writeError(response, SlingHttpServletResponse.SC_BAD_REQUEST, "Unknown format: " + formatParameter);
+			return;
+		}
+		String postData = PostData.read(request);
+		ExtractJob job;
+		try {
+			JSONObject query = StringUtils.isBlank(postData) ? null : new JSONObject(postData);
+			job = jobService.submit(request.getParameter("conf"), query, request.getParameterMap(), format);
+		} catch (JSONException e) {
+			throw new IOException("Error parsing JSON request string from POST call.");
+		} catch (IllegalArgumentException e) {
+			writeError(response, SlingHttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		} catch (IllegalStateException e) {
+			writeError(response, SlingHttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+			return;
+		}
+		response.setStatus(SlingHttpServletResponse.SC_ACCEPTED);
+		response.setHeader("Location", JOBS_PATH + ".json?id=" + job.getId());
+		writeStatus(response, job);
+	}
+
+	@Override
+	protected void doDelete(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+
+		ExtractJob job = jobService.cancel(request.getParameter("id"));
+		if (job == null) {
+			writeError(response, SlingHttpServletResponse.SC_NOT_FOUND, "Unknown extract job.");
+		} else {
+			writeStatus(response, job);
+		}
+	}
+
+	/**
+	 * Stream the result file of a finished job, compressed if the client accepts it.
+	 */
+	private void writeResult(SlingHttpServletRequest request, SlingHttpServletResponse response, ExtractJob job)
+			throws IOException {
+		InputStream in = jobService.openResult(job.getId());
+		if (in == null) {
+			writeError(response, SlingHttpServletResponse.SC_CONFLICT, "The extract job is " + job.getState() + ".");
+			return;
+		}
+		try {
+			response.setContentType(job.getFormat().getContentType());
+			if (job.getFormat().isText()) {
+				response.setCharacterEncoding("UTF-8");
+			}
+			response.setHeader("Content-Disposition",
+					"attachment; filename=\"" + job.getId() + "." + job.getFormat().getExtension() + "\"");
+			OutputStream out = CompressedResponse.openStream(request, response);
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			out.close();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeStatus(SlingHttpServletResponse response, ExtractJob job) throws IOException {
+		ExtractProgress progress = job.getProgress();
+		long end = job.getFinishTime() > 0 ? job.getFinishTime() : System.currentTimeMillis();
+		JSONObject status = new JSONObject();
+		try {
+			status.put("id", job.getId());
+			status.put("state", job.getState().name());
+			status.put("format", job.getFormat().getExtension());
+			status.put("scanned", progress.getScanned());
+			status.put("emitted", progress.getEmitted());
+			status.put("total", progress.getTotal());
+			status.put("elapsedMillis", end - job.getSubmitTime());
+			status.put("etaMillis", job.getState().isDone() ? 0 : progress.getEtaMillis());
+			status.put("truncated", progress.isTruncated() ? progress.getTruncatedReason() : JSONObject.NULL);
+			status.put("cursor", progress.getNextCursor() == null ? JSONObject.NULL : progress.getNextCursor());
+			status.put("error", job.getError() == null ? JSONObject.NULL : job.getError());
+		} catch (JSONException e) {
+			throw new IOException("Error writing the extract job status.");
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		Writer w = response.getWriter();
+		w.write(status.toString());
+	}
+
+	private void writeError(SlingHttpServletResponse response, int status, String message) throws IOException {
+		JSONObject error = new JSONObject();
+		try {
+			error.put("error", message);
+		} catch (JSONException e) {
+			throw new IOException("Error writing the extract job error.");
+		}
+		response.setStatus(status);
+		response.setContentType("application/json");
+		response.getWriter().write(error.toString());
+	}
+    
+}
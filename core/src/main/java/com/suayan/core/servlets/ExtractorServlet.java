@@ -1,35 +1,52 @@
 package com.suayan.core.servlets;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ServiceScope;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.suayan.core.extractor.ExtractDelta;
+import com.suayan.core.extractor.ExtractDeltaExpiredException;
+import com.suayan.core.extractor.ExtractExplain;
+import com.suayan.core.extractor.ExtractFormat;
+import com.suayan.core.extractor.ExtractPage;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.extractor.ExtractRule;
+import com.suayan.core.extractor.ExtractSink;
+import com.suayan.core.extractor.JsonBatchSink;
+import com.suayan.core.extractor.TypedExtractSink;
 import com.suayan.core.services.ScannerService;
-import com.suayan.core.utils.CsvUtils;
 /**
  * An API endpoint for running JCR Queries defined under /apps/ccui/extractor.
  * 
- * Trigger by:
  * /bin/api/extract.json?conf=name_of_json_config
- * To generate CSV instead:
- * /bin/api/extract.csv?conf=name_of_json_config
+ * /bin/api/extract.csv|ndjson|ccol?conf=...   other formats, see the sinks
+ * /bin/api/extract.json?conf=...&limit=500    one page, see ExtractPage
+ * /bin/api/extract.json?conf=...&cursor=...   the next page
+ * /bin/api/extract.json?conf=...&since=...    changes only, see ExtractDelta
+ * /bin/api/extract.batch.json?conf=a&conf=b   several extracts, see JsonBatchSink
+ * /bin/api/extract.explain.json?conf=...      the query plan, see ExtractExplain
+ * 
+ * The batch and explain forms also take a POSTed query object. A truncated
+ * extract is described by ExtractProgress.
  * 
  * @author Kyo Suayan
  *
@@ -39,17 +56,24 @@ import com.suayan.core.utils.CsvUtils;
     property = {
         "service.description=Extractor Servlet",
         "service.vendor=CCUI",
-        "sling.servlet.extensions=json,csv",
+        "sling.servlet.extensions=json,csv,ndjson,ccol",
         "sling.servlet.paths=/bin/api/extract"
     },
     scope = ServiceScope.SINGLETON
 )    
 public class ExtractorServlet extends SlingAllMethodsServlet {
     private static final long serialVersionUID = 78634124L;
-    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    // the cursor of the next page, missing on the last keyset page
+    private static final String CURSOR_HEADER = "X-Extract-Cursor";
+    // the since value of the next delta, on every unpaged extract
+    private static final String WATERMARK_HEADER = "X-Extract-Watermark";
+    // why the extract stopped short, if the response is not committed yet
+    private static final String TRUNCATED_HEADER = "X-Extract-Truncated";
+    private static final String BATCH_SELECTOR = "batch";
+    private static final String EXPLAIN_SELECTOR = "explain";
 
     @Reference
-    private ScannerService scanner;
+    ScannerService scanner;
 
 	@Override
 	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
@@ -57,23 +81,33 @@ public class ExtractorServlet extends SlingAllMethodsServlet {
 
 		String conf = request.getParameter("conf");
 		String extension = request.getRequestPathInfo().getExtension();
-		Writer w = response.getWriter();
-		if (StringUtils.isEmpty(conf)) {
+		ExtractProgress progress = new ExtractProgress();
+		OutputStream out = new AbortOnErrorStream(CompressedResponse.openStream(request, response), progress);
+		Writer w = CompressedResponse.openWriter(out, response);
+		if (hasSelector(request, EXPLAIN_SELECTOR)) {
+			explain(request, response, w, conf);
+		} else if (isBatch(request) && !StringUtils.isEmpty(conf)) {
+			JSONObject batch = new JSONObject();
+			try {
+				for (String name : request.getParameterValues("conf")) {
+					batch.put(name, name);
+				}
+			} catch (JSONException e) {
+				throw new IOException("Error building the batch from the conf parameters.");
+			}
+			extractBatch(request, response, w, batch);
+		} else if (StringUtils.isEmpty(conf)) {
 			response.setContentType("application/json");
 			w.write("{\"error\":\"Please provide a conf parameter.\"}");
-		} else {
-			List<JSONObject> results = null;
-			results = scanner.queryByJsonConfig(conf, request.getParameterMap());
-			JSONArray jsonList = new JSONArray(results);
-			if (results == null || results.size() == 0) {
-				response.setContentType("application/json");
-				w.write("{\"error\":\"No results found.\"}");
-			} else if (extension.toLowerCase().equals("csv")) {
-				response.setContentType("text/csv");
-				w.write(CsvUtils.jsonArrayToCsv(jsonList.toString()));
-			} else {
-				response.setContentType("application/json");
-				w.write(jsonList.toString());
+		} else if (setPageHeaders(request, response, w)) {
+			try {
+				scanner.extractByJsonConfig(conf, request.getParameterMap(),
+						createSink(extension, response, out, w, progress), progress);
+				setTruncatedHeader(response, progress);
+			} catch (ExtractDeltaExpiredException e) {
+				writeError(response, w, SlingHttpServletResponse.SC_GONE, e.getMessage());
+			} catch (IllegalArgumentException e) {
+				writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, e.getMessage());
 			}
 		}
 		w.close();
@@ -84,40 +118,186 @@ public class ExtractorServlet extends SlingAllMethodsServlet {
 			throws ServletException, IOException {
 
 		String extension = request.getRequestPathInfo().getExtension();
-		Writer w = response.getWriter();
+		ExtractProgress progress = new ExtractProgress();
+		OutputStream out = new AbortOnErrorStream(CompressedResponse.openStream(request, response), progress);
+		Writer w = CompressedResponse.openWriter(out, response);
 		JSONObject jsonPostData = null;
 		try {
-			jsonPostData = new JSONObject(getPostData(request));
-			List<JSONObject> results = null;
-			results = scanner.queryByJsonObject(jsonPostData, request.getParameterMap());
-			JSONArray jsonList = new JSONArray(results);
-			if (results == null || results.size() == 0) {
-				response.setContentType("application/json");
-				w.write("{\"error\":\"No results found.\"}");
-			} else if (extension.toLowerCase().equals("csv")) {
-				response.setContentType("text/csv");
-				w.write(CsvUtils.jsonArrayToCsv(jsonList.toString()));
-			} else {
-				response.setContentType("application/json");
-				w.write(jsonList.toString());
+			jsonPostData = new JSONObject(PostData.read(request));
+			if (hasSelector(request, EXPLAIN_SELECTOR)) {
+				explain(request, response, w, jsonPostData);
+			} else if (isBatch(request)) {
+				extractBatch(request, response, w, jsonPostData);
+			} else if (setPageHeaders(request, response, w)) {
+				scanner.extractByJsonObject(jsonPostData, request.getParameterMap(),
+						createSink(extension, response, out, w, progress), progress);
+				setTruncatedHeader(response, progress);
 			}
 		} catch (JSONException e) {
 			throw new IOException("Error parsing JSON request string from POST call.");
+		} catch (ExtractDeltaExpiredException e) {
+			writeError(response, w, SlingHttpServletResponse.SC_GONE, e.getMessage());
+		} catch (IllegalArgumentException e) {
+			writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, e.getMessage());
 		}
 		w.close();
 	}
-    
-    private String getPostData(SlingHttpServletRequest request) {
-        StringBuffer jb = new StringBuffer();
-        String line = null;
-        try {
-            BufferedReader reader = request.getReader();
-            while ((line = reader.readLine()) != null)
-                jb.append(line);
-        } catch (Exception e) {
-        	log.error("getPostData()", e.getMessage());
-        }
-        return jb.toString();
-    }
-    
+
+	/**
+	 * Set the content type for the extension and create the sink that
+	 * writes the records in its format. The sink sends the cursor of the
+	 * next page, which the extract sets on progress before it begins.
+	 */
+	private ExtractSink createSink(String extension, SlingHttpServletResponse response, OutputStream out,
+			Writer w, ExtractProgress progress) {
+		ExtractFormat format = ExtractFormat.fromExtension(extension);
+		response.setContentType(format.getContentType());
+		ExtractSink sink = format.createSink(out, w);
+		if (sink instanceof TypedExtractSink) {
+			return new TypedCursorSink(sink, response, progress);
+		}
+		return new CursorSink(sink, response, progress);
+	}
+
+	private boolean isBatch(SlingHttpServletRequest request) {
+		return hasSelector(request, BATCH_SELECTOR);
+	}
+
+	private boolean hasSelector(SlingHttpServletRequest request, String selector) {
+		return ArrayUtils.contains(request.getRequestPathInfo().getSelectors(), selector);
+	}
+
+	/**
+	 * Write the explain report of one config, or of every config if
+	 * there is none.
+	 * @param config a config path, a query object or null
+	 */
+	private void explain(SlingHttpServletRequest request, SlingHttpServletResponse response, Writer w,
+			Object config) throws IOException {
+		if (config == null || "".equals(config)) {
+			ObjectNode report = JsonNodeFactory.instance.objectNode();
+			ObjectNode configs = report.putObject("configs");
+			ArrayNode uncovered = report.putArray("uncovered");
+			for (Map.Entry<String, ExtractExplain> entry : scanner.explainConfigs().entrySet()) {
+				configs.set(entry.getKey(), entry.getValue().toJson());
+				if (!entry.getValue().isCovered()) {
+					uncovered.add(entry.getKey());
+				}
+			}
+			response.setContentType("application/json");
+			w.write(report.toString());
+			return;
+		}
+		ExtractExplain explain;
+		try {
+			explain = scanner.explain(config, request.getParameterMap());
+		} catch (IllegalArgumentException e) {
+			writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		if (explain == null) {
+			writeError(response, w, SlingHttpServletResponse.SC_NOT_FOUND, "Unknown extract config.");
+			return;
+		}
+		response.setContentType("application/json");
+		w.write(explain.toJson().toString());
+	}
+
+	/**
+	 * Run every extract of the batch and stream the results as one JSON
+	 * object keyed by extract name.
+	 */
+	private void extractBatch(SlingHttpServletRequest request, SlingHttpServletResponse response, Writer w,
+			JSONObject batch) throws IOException {
+		if (!"json".equalsIgnoreCase(request.getRequestPathInfo().getExtension())) {
+			writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, "A batch is only available as JSON.");
+		} else if (StringUtils.isNotEmpty(request.getParameter(ExtractPage.CURSOR_PARAM))) {
+			// a cursor belongs to the query of one extract.
+			writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, "A batch can not be resumed with a cursor.");
+		} else if (setPageHeaders(request, response, w)) {
+			response.setContentType("application/json");
+			scanner.extractBatch(batch, request.getParameterMap(), new JsonBatchSink(w));
+		}
+	}
+
+	/**
+	 * Validate the paging and delta params. A full or delta extract gets
+	 * the watermark for its next delta, taken before the extract runs so
+	 * no change can fall between the two. A page of an extract gets none.
+	 * 
+	 * @return false if the params were invalid and an error was written
+	 */
+	private boolean setPageHeaders(SlingHttpServletRequest request, SlingHttpServletResponse response, Writer w)
+			throws IOException {
+		long watermark = System.currentTimeMillis();
+		ExtractPage page;
+		try {
+			page = ExtractPage.fromParams(request.getParameterMap());
+			ExtractDelta.sinceFromParams(request.getParameterMap());
+		} catch (IllegalArgumentException e) {
+			writeError(response, w, SlingHttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return false;
+		}
+		if (!page.isPaged() && page.getOffset() == 0) {
+			response.setHeader(WATERMARK_HEADER, String.valueOf(watermark));
+		}
+		return true;
+	}
+
+	/**
+	 * Mark a result cut short by its budget, if the headers are not sent yet.
+	 */
+	private void setTruncatedHeader(SlingHttpServletResponse response, ExtractProgress progress) {
+		if (progress.isTruncated() && !response.isCommitted()) {
+			response.setHeader(TRUNCATED_HEADER, progress.getTruncatedReason());
+		}
+	}
+
+	private void writeError(SlingHttpServletResponse response, Writer w, int status, String message)
+			throws IOException {
+		response.setStatus(status);
+		response.setContentType("application/json");
+		w.write(JsonNodeFactory.instance.objectNode().put("error", message).toString());
+	}
+
+	/**
+	 * Sets the cursor of the next page before the first record is written.
+	 */
+	private static class CursorSink implements ExtractSink {
+
+		private final ExtractSink sink;
+		private final SlingHttpServletResponse response;
+		private final ExtractProgress progress;
+
+		private CursorSink(ExtractSink sink, SlingHttpServletResponse response, ExtractProgress progress) {
+			this.sink = sink;
+			this.response = response;
+			this.progress = progress;
+		}
+
+		public void begin(List<ExtractRule> rules) throws IOException {
+			if (progress.getNextCursor() != null) {
+				response.setHeader(CURSOR_HEADER, progress.getNextCursor());
+			}
+			sink.begin(rules);
+		}
+
+		public void accept(ObjectNode record) throws IOException {
+			sink.accept(record);
+		}
+
+		public void end(String truncated) throws IOException {
+			sink.end(truncated);
+		}
+	}
+
+	/**
+	 * A CursorSink for a format that wants typed values.
+	 */
+	private static final class TypedCursorSink extends CursorSink implements TypedExtractSink {
+
+		private TypedCursorSink(ExtractSink sink, SlingHttpServletResponse response, ExtractProgress progress) {
+			super(sink, response, progress);
+		}
+	}
 }
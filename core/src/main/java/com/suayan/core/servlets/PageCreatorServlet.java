@@ -1,6 +1,5 @@
 package com.suayan.core.servlets;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.time.ZonedDateTime;
@@ -98,7 +97,7 @@ public class PageCreatorServlet extends SlingAllMethodsServlet {
     @Override
     protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
             throws ServletException, IOException {
-        String postData = getPostData(request);
+        String postData = PostData.read(request);
         JSONObject jsonPostData = null;
         try {
         	
@@ -131,19 +130,6 @@ public class PageCreatorServlet extends SlingAllMethodsServlet {
         }
     }
 
-    private String getPostData(SlingHttpServletRequest request) {
-        StringBuffer jb = new StringBuffer();
-        String line = null;
-        try {
-            BufferedReader reader = request.getReader();
-            while ((line = reader.readLine()) != null)
-                jb.append(line);
-        } catch (Exception e) {
-        	log.error("getPostData()", e.getMessage());
-        }
-        return jb.toString();
-    }
-
     private void createNodeHierarchy(String path, JSONObject jsonObject, JSONObject orderedKeys) {
         try {            
             if (jcrContentSession == null) {
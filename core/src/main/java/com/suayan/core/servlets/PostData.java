@@ -0,0 +1,39 @@
+package com.suayan.core.servlets;
+
+import java.io.BufferedReader;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the body of a POST request for the servlets of this package.
+ * 
+ * @author Kyo Suayan
+ *
+ */
+final class PostData {
+
+    private static final Logger log = LoggerFactory.getLogger(PostData.class);
+
+    private PostData() {
+    }
+
+    /**
+     * @param request
+     * @return the lines of the body joined, or what was read before an error
+     */
+    static String read(SlingHttpServletRequest request) {
+        StringBuilder jb = new StringBuilder();
+        String line = null;
+        try {
+            BufferedReader reader = request.getReader();
+            while ((line = reader.readLine()) != null) {
+                jb.append(line);
+            }
+        } catch (Exception e) {
+            log.error("Unable to read the POST body.", e);
+        }
+        return jb.toString();
+    }
+}
@@ -0,0 +1,420 @@
+package com.suayan.core.sling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+/**
+ * A query statement with {key} placeholders, parsed once into a list
+ * of literal text and parameter tokens.
+ *
+ * For JCR-SQL2, a placeholder that makes up a whole string literal,
+ * such as '{value}', is sent to the repository as the bind variable
+ * $value and bound with Query.bindValue(). The statement text then only
+ * depends on which parameters are present, not on their values, so the
+ * repository can reuse its parsed query. Path constraints such as
+ * ISDESCENDANTNODE('{path}') do not take bind variables and are inlined.
+ *
+ * Inlined values inside a quoted literal have their quotes doubled, so a
+ * value cannot end the literal. Placeholders outside quotes (node names,
+ * xpath paths) only take a JCR path or name, optionally prefixed with @
+ * for an xpath property, and any other value is rejected. A placeholder
+ * without a value is left in the statement unchanged.
+ *
+ * For keyset paging, withPathRange() derives a template restricted to a
+ * range of paths and ordered by path.
+ *
+ * A template is immutable and can be shared between threads.
+ *
+ * @author Kyo Suayan
+ *
+ */
+public final class QueryTemplate {
+
+    private static final String EXPLAIN = "explain ";
+    private static final String[] PATH_CONSTRAINTS = { "ISDESCENDANTNODE", "ISCHILDNODE", "ISSAMENODE" };
+    private static final String WHERE = "WHERE";
+    private static final String ORDER_BY = "ORDER BY";
+    private static final String PATH = "[jcr:path]";
+    // a JCR name or a path of names, such as /jcr:root/content/ccui or @sling:resourceType.
+    private static final Pattern UNQUOTED_VALUE = Pattern.compile("@?(/|/?[\\p{L}\\p{N}_:.\\-]+(/[\\p{L}\\p{N}_:.\\-]+)*/?)");
+
+    private final String statement;
+    private final String language;
+    private final List<Token> tokens;
+    private final Set<String> parameterNames;
+
+    private QueryTemplate(String statement, String language, List<Token> tokens) {
+        this.statement = statement;
+        this.language = language;
+        this.tokens = Collections.unmodifiableList(tokens);
+        Set<String> names = new LinkedHashSet<String>();
+        for (Token token : tokens) {
+            if (token.param != null) {
+                names.add(token.param);
+            }
+        }
+        this.parameterNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @param statement the statement with {key} placeholders
+     * @param language the query language, such as Query.JCR_SQL2 or "xpath"
+     * @return the parsed template
+     */
+    public static QueryTemplate parse(String statement, String language) {
+        List<Token> tokens = new ArrayList<Token>();
+        if (statement == null) {
+            return new QueryTemplate(null, language, tokens);
+        }
+        boolean bindable = Query.JCR_SQL2.equals(language);
+        StringBuilder text = new StringBuilder();
+        // the statement so far, used to find the function a literal belongs to.
+        StringBuilder seen = new StringBuilder();
+        char quote = 0;
+        int quoteStart = -1;
+        int length = statement.length();
+        int i = 0;
+        while (i < length) {
+            char c = statement.charAt(i);
+            if (quote != 0 && c == quote) {
+                if (i + 1 < length && statement.charAt(i + 1) == quote) {
+                    text.append(c).append(c);
+                    seen.append(c).append(c);
+                    i += 2;
+                    continue;
+                }
+                quote = 0;
+            } else if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+                quoteStart = i;
+            } else if (c == '{') {
+                int end = statement.indexOf('}', i + 1);
+                int next = statement.indexOf('{', i + 1);
+                if (end > i + 1 && (next < 0 || next > end)) {
+                    String name = statement.substring(i + 1, end);
+                    boolean whole = quote != 0 && quoteStart == i - 1 && end + 1 < length
+                            && statement.charAt(end + 1) == quote
+                            && (end + 2 >= length || statement.charAt(end + 2) != quote);
+                    if (whole) {
+                        // the literal's opening quote belongs to the token.
+                        text.setLength(text.length() - 1);
+                        seen.setLength(seen.length() - 1);
+                    }
+                    if (text.length() > 0) {
+                        tokens.add(new Token(text.toString(), null, (char) 0, false, false));
+                        text.setLength(0);
+                    }
+                    boolean bind = whole && bindable && isBindVariableName(name) && !inPathConstraint(seen);
+                    tokens.add(new Token(null, name, quote, whole, bind));
+                    seen.append('?');
+                    if (whole) {
+                        quote = 0;
+                        i = end + 2;
+                    } else {
+                        i = end + 1;
+                    }
+                    continue;
+                }
+            }
+            text.append(c);
+            seen.append(c);
+            i++;
+        }
+        if (text.length() > 0) {
+            tokens.add(new Token(text.toString(), null, (char) 0, false, false));
+        }
+        return new QueryTemplate(statement, language, tokens);
+    }
+
+    /**
+     * @return the statement as written, with placeholders
+     */
+    public String getStatement() {
+        return statement;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the placeholder names in order of first appearance
+     */
+    public Set<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @return true if the template has no placeholders
+     */
+    public boolean isStatic() {
+        return parameterNames.isEmpty();
+    }
+
+    /**
+     * Inline every value into the statement, for logging or for APIs
+     * that only take a statement string.
+     *
+     * @param values
+     * @return the statement, null if the template has none
+     * @throws IllegalArgumentException if a placeholder outside quotes gets a value that is not a path or name
+     */
+    public String render(Map<String, String> values) {
+        return toStatement(values, null);
+    }
+
+    /**
+     * Create the query, binding the values of bindable placeholders and
+     * inlining the rest.
+     *
+     * @param queryManager
+     * @param valueFactory
+     * @param values
+     * @return the query, ready to execute
+     * @throws RepositoryException if the statement is not valid
+     * @throws IllegalArgumentException if a placeholder outside quotes gets a value that is not a path or name
+     */
+    public Query createQuery(QueryManager queryManager, ValueFactory valueFactory, Map<String, String> values)
+            throws RepositoryException {
+        return createQuery(queryManager, valueFactory, values, "");
+    }
+
+    /**
+     * Create the Oak EXPLAIN query of this statement, bound the same way
+     * as createQuery(). Its single row has the plan in the "plan" column.
+     *
+     * @param queryManager
+     * @param valueFactory
+     * @param values
+     * @return the query, ready to execute
+     * @throws RepositoryException if the statement is not valid
+     */
+    public Query createExplainQuery(QueryManager queryManager, ValueFactory valueFactory, Map<String, String> values)
+            throws RepositoryException {
+        return createQuery(queryManager, valueFactory, values, EXPLAIN);
+    }
+
+    private Query createQuery(QueryManager queryManager, ValueFactory valueFactory, Map<String, String> values,
+            String prefix) throws RepositoryException {
+        Map<String, String> bindings = new LinkedHashMap<String, String>();
+        Query query = queryManager.createQuery(prefix + toStatement(values, bindings), language);
+        for (Map.Entry<String, String> binding : bindings.entrySet()) {
+            query.bindValue(binding.getKey(), valueFactory.createValue(binding.getValue()));
+        }
+        return query;
+    }
+
+    /**
+     * @param values
+     * @param bindings receives the values to bind, null to inline everything
+     * @return the statement text
+     */
+    String toStatement(Map<String, String> values, Map<String, String> bindings) {
+        if (statement == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(statement.length() + 16);
+        for (Token token : tokens) {
+            if (token.param == null) {
+                result.append(token.text);
+                continue;
+            }
+            String value = values == null ? null : values.get(token.param);
+            if (token.whole) {
+                if (value == null) {
+                    result.append(token.quote).append('{').append(token.param).append('}').append(token.quote);
+                } else if (token.bindable && bindings != null) {
+                    bindings.put(token.param, value);
+                    result.append('$').append(token.param);
+                } else {
+                    result.append(token.quote).append(escape(value, token.quote)).append(token.quote);
+                }
+            } else if (value == null) {
+                result.append('{').append(token.param).append('}');
+            } else if (token.quote == 0 && !UNQUOTED_VALUE.matcher(value).matches()) {
+                throw new IllegalArgumentException("Invalid value for " + token.param + ": a path or name is expected.");
+            } else {
+                result.append(escape(value, token.quote));
+            }
+        }
+        return result.toString();
+    }
+
+    private static String escape(String value, char quote) {
+        if (quote == 0 || value.indexOf(quote) < 0) {
+            return value;
+        }
+        String q = String.valueOf(quote);
+        return value.replace(q, q + q);
+    }
+
+    private static boolean isBindVariableName(String name) {
+        if (!Character.isLetter(name.charAt(0)) && name.charAt(0) != '_') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param seen the statement up to a literal
+     * @return true if the literal is an argument of a path constraint
+     */
+    private static boolean inPathConstraint(CharSequence seen) {
+        String before = seen.toString();
+        int open = before.lastIndexOf('(');
+        if (open < 0 || before.indexOf(')', open) >= 0) {
+            return false;
+        }
+        String function = before.substring(0, open).trim().toUpperCase(Locale.ENGLISH);
+        for (String constraint : PATH_CONSTRAINTS) {
+            if (function.endsWith(constraint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Restrict a JCR-SQL2 statement to a range of paths and order it by
+     * path, for keyset paging. The bounds are whole literal placeholders,
+     * so they are bound like any other value.
+     *
+     * @param after the placeholder of the path the range starts after, null for no lower bound
+     * @param until the placeholder of the last path in the range, null for no upper bound
+     * @return the restricted template, null if the statement can not be ordered by path:
+     *         it is not JCR-SQL2, has an ORDER BY of its own or more than one selector
+     */
+    public QueryTemplate withPathRange(String after, String until) {
+        int[] clauses = findClauses();
+        if (clauses == null || clauses[1] >= 0) {
+            return null;
+        }
+        int where = clauses[0];
+        String head = where >= 0 ? statement.substring(0, where) : statement;
+        String condition = where >= 0 ? statement.substring(where + WHERE.length()).trim() : "";
+        List<String> predicates = new ArrayList<String>();
+        if (after != null) {
+            predicates.add(PATH + " > '{" + after + "}'");
+        }
+        if (until != null) {
+            predicates.add(PATH + " <= '{" + until + "}'");
+        }
+        if (!condition.isEmpty()) {
+            predicates.add("(" + condition + ")");
+        }
+        StringBuilder result = new StringBuilder(head.trim());
+        for (int i = 0; i < predicates.size(); i++) {
+            result.append(i == 0 ? " " + WHERE + " " : " AND ").append(predicates.get(i));
+        }
+        result.append(" ").append(ORDER_BY).append(" ").append(PATH);
+        return parse(result.toString(), language);
+    }
+
+    /**
+     * Append the path to the ORDER BY of a JCR-SQL2 statement, so rows
+     * that sort the same keep one order from query to query.
+     *
+     * @return the template with the path as the last ordering, itself if one can not be added
+     */
+    public QueryTemplate withPathTieBreak() {
+        int[] clauses = findClauses();
+        if (clauses == null || clauses[1] < 0) {
+            return this;
+        }
+        return parse(statement.trim() + ", " + PATH, language);
+    }
+
+    /**
+     * Find the top level WHERE and ORDER BY of a single selector JCR-SQL2
+     * statement, outside of literals, brackets and parentheses.
+     *
+     * @return the start of WHERE and ORDER BY, -1 if absent; null for other statements
+     */
+    private int[] findClauses() {
+        if (statement == null || !Query.JCR_SQL2.equals(language)) {
+            return null;
+        }
+        String upper = statement.toUpperCase(Locale.ENGLISH);
+        int[] clauses = { -1, -1 };
+        char quote = 0;
+        int depth = 0;
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (depth == 0 && isKeywordAt(upper, i, "JOIN") || depth == 0 && isKeywordAt(upper, i, "UNION")) {
+                return null;
+            } else if (depth == 0 && clauses[0] < 0 && isKeywordAt(upper, i, WHERE)) {
+                clauses[0] = i;
+            } else if (depth == 0 && isKeywordAt(upper, i, "ORDER") && upper.startsWith("BY", skipSpaces(upper, i + 5))) {
+                clauses[1] = i;
+            }
+        }
+        return clauses;
+    }
+
+    private static boolean isKeywordAt(String upper, int i, String keyword) {
+        int end = i + keyword.length();
+        return upper.startsWith(keyword, i) && (i == 0 || !isWordChar(upper.charAt(i - 1)))
+                && (end == upper.length() || !isWordChar(upper.charAt(end)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static int skipSpaces(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryTemplate [language=" + language + ", statement=" + statement + "]";
+    }
+
+    private static final class Token {
+
+        private final String text;
+        private final String param;
+        private final char quote;
+        private final boolean whole;
+        private final boolean bindable;
+
+        Token(String text, String param, char quote, boolean whole, boolean bindable) {
+            this.text = text;
+            this.param = param;
+            this.quote = quote;
+            this.whole = whole;
+            this.bindable = bindable;
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.suayan.core.sling;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -15,6 +13,7 @@ public class SlingQueryStatement {
     private String queryStatement;
     private String queryLanguage;
     private Map<String,String> params = null;
+    private QueryTemplate template = null;
 
     /**
      * Do not assume params will always be defined.
@@ -45,6 +44,7 @@ public class SlingQueryStatement {
      */
     public void setQueryStatement(String queryStatement) {
         this.queryStatement = queryStatement;
+        this.template = null;
     }
     /**
      * @return the queryLanguage
@@ -57,6 +57,7 @@ public class SlingQueryStatement {
      */
     public void setQueryLanguage(String queryLanguage) {
         this.queryLanguage = queryLanguage;
+        this.template = null;
     }
     /**
      * @return the params
@@ -70,12 +71,23 @@ public class SlingQueryStatement {
     public void setParams(Map<String, String> params) {
         this.params = params;
     }
+    /**
+     * The template is parsed once per statement and language. Use its
+     * createQuery() to bind JCR-SQL2 parameters instead of inlining them.
+     *
+     * @return the statement parsed into a QueryTemplate
+     */
+    public QueryTemplate getTemplate() {
+        if (template == null) {
+            template = QueryTemplate.parse(queryStatement, queryLanguage);
+        }
+        return template;
+    }
+
     /**
      * Replace placeholders in query with map values using {key} as
      * substring to look for.
      *
-     * @param query
-     * @param params
      * @return
      */
     public String compile() {
@@ -83,15 +95,7 @@ public class SlingQueryStatement {
             return null;
         if (params == null)
             return this.queryStatement;
-        String result = queryStatement;
-        for (Map.Entry<String, String> entry : params.entrySet()) {
-            String token = Pattern.quote("{"+entry.getKey()+"}");
-            String value = entry.getValue();
-            // log.trace("token: " + token + " value:" + value);
-           result = result.replaceAll(token, Matcher.quoteReplacement(value));
-        }
-        // log.trace(">> compiled: " + result);
-        return result;
+        return getTemplate().render(params);
     }
 
     public void addParam(String name, String value) {
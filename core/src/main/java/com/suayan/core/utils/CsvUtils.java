@@ -18,6 +18,11 @@ public class CsvUtils {
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final CsvMapper csvMapper = new CsvMapper();
 
+    /**
+     * @deprecated buffers the whole extract; use
+     * {@link com.suayan.core.extractor.CsvRecordSink} to write rows as they are extracted.
+     */
+    @Deprecated
     public static String jsonArrayToCsv(String jsonArrayString) throws IOException {
         if (jsonArrayString == null || jsonArrayString.isEmpty()) {
             throw new IOException("Please pass a valid JSON array string");
@@ -38,6 +38,8 @@ public class Utils {
 
 	private static final Logger log = LoggerFactory.getLogger(Utils.class);
 	public static final int NODE_LIMIT = 20;
+	// ObjectMapper is thread safe once configured, so one instance serves every conversion.
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     
     private Utils() {        
     }
@@ -830,8 +832,7 @@ public class Utils {
 
     // Method to convert Node to ObjectNode with rejected keys
     public static ObjectNode convertNodeToJson(Node node, Set<String> rejectedKeys) throws RepositoryException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode jsonNode = objectMapper.createObjectNode();
+        ObjectNode jsonNode = OBJECT_MAPPER.createObjectNode();
         // Add properties of the node to the JSON object, excluding rejected keys
         if (node.hasProperties()) {
               PropertyIterator properties = node.getProperties();
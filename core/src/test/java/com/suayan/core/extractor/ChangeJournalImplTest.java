@@ -0,0 +1,142 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class ChangeJournalImplTest {
+
+    private ChangeJournalImpl journal;
+    private long activated;
+
+    @BeforeEach
+    void setUp() {
+        ChangeJournalConfig config = mock(ChangeJournalConfig.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(3);
+        journal = new ChangeJournalImpl();
+        journal.activate(config);
+        activated = System.currentTimeMillis();
+    }
+
+    @Test
+    void refusesWatermarksBeforeActivation() {
+        assertNull(journal.getDelta(activated - 60000));
+        assertEquals(0, journal.getDelta(tick(activated)).getRemovedPaths("/").size());
+    }
+
+    @Test
+    void reportsRemovalsUnderTheQueryRoot() {
+        long since = tick(activated);
+        journal.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.REMOVED, "/content/ccui/us/a", false),
+                new ResourceChange(ChangeType.REMOVED, "/content/ccui/fr/b", false),
+                new ResourceChange(ChangeType.REMOVED, "/content/ccui", false)));
+
+        List<String> removed = journal.getDelta(since).getRemovedPaths("/content/ccui/us");
+
+        assertEquals(Arrays.asList("/content/ccui/us/a", "/content/ccui"), removed);
+    }
+
+    @Test
+    void forgetsWatermarksOnceFull() {
+        long since = tick(activated);
+        for (int i = 0; i < 4; i++) {
+            journal.onChange(Collections.singletonList(
+                    new ResourceChange(ChangeType.CHANGED, "/content/ccui/" + i, false)));
+        }
+
+        assertNull(journal.getDelta(since));
+    }
+
+    @Test
+    void filtersUnmodifiedNodes() throws RepositoryException {
+        Session session = MockJcr.newSession();
+        Node content = session.getRootNode().addNode("content", "nt:unstructured");
+        Node old = page(content, "old", 1000L);
+        Node recent = page(content, "recent", 5000L);
+        Node touched = page(content, "touched", 1000L);
+        Node undated = content.addNode("undated", "nt:unstructured");
+        ExtractDelta delta = new ExtractDelta(3000L, Collections.singleton("/content/touched/jcr:content/text"),
+                Collections.<String>emptyList());
+
+        assertFalse(delta.isModified(old));
+        assertTrue(delta.isModified(recent));
+        assertTrue(delta.isModified(touched));
+        assertTrue(delta.isModified(undated));
+
+        List<String> paths = new ArrayList<String>();
+        NodeIterator it = delta.filter(content.getNodes());
+        while (it.hasNext()) {
+            paths.add(it.nextNode().getPath());
+        }
+        assertEquals(Arrays.asList("/content/recent", "/content/touched", "/content/undated"), paths);
+    }
+
+    @Test
+    void tombstonesUseThePlanColumns() {
+        ExtractDelta delta = new ExtractDelta(0, Collections.<String>emptyList(), Collections.<String>emptyList());
+        ExtractPlan plan = delta.extend(ExtractPlan.compile(Arrays.asList(
+                new ExtractRule("title", ExtractType.TITLE), new ExtractRule("url", ExtractType.PATH))));
+
+        ObjectNode tombstone = delta.tombstone("/content/ccui/a", plan);
+
+        assertEquals(3, plan.getRules().size());
+        assertEquals("/content/ccui/a", tombstone.get("url").asText());
+        assertTrue(tombstone.get(ExtractDelta.DELETED_PROPERTY).asBoolean());
+    }
+
+    @Test
+    void sinceCanNotBePaged() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put(ExtractDelta.SINCE_PARAM, new String[] { "2024-01-01T00:00:00Z" });
+        assertEquals(1704067200000L, ExtractDelta.sinceFromParams(params));
+
+        params.put(ExtractPage.LIMIT_PARAM, new String[] { "10" });
+        assertThrows(IllegalArgumentException.class, () -> ExtractDelta.sinceFromParams(params));
+    }
+
+    /**
+     * Wait for the clock to pass time.
+     */
+    private static long tick(long time) {
+        long now;
+        while ((now = System.currentTimeMillis()) <= time) {
+            Thread.yield();
+        }
+        return now;
+    }
+
+    private static Node page(Node parent, String name, long lastModified) throws RepositoryException {
+        Node page = parent.addNode(name, "nt:unstructured");
+        Calendar date = Calendar.getInstance();
+        date.setTimeInMillis(lastModified);
+        page.addNode("jcr:content", "nt:unstructured").setProperty("cq:lastModified", date);
+        return page;
+    }
+}
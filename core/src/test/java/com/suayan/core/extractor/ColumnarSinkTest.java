@@ -0,0 +1,158 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class ColumnarSinkTest {
+
+    @Test
+    void writesTypedColumnsPerRowGroup() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarSink sink = new ColumnarSink(bytes, 3);
+        sink.begin(Arrays.asList(
+                new ExtractRule("type", ExtractType.PROPERTY, null, "sling:resourceType"),
+                new ExtractRule("modified", ExtractType.PROPERTY, null, "cq:lastModified"),
+                new ExtractRule("deleted", ExtractType.DELETED)));
+        sink.accept(record("ccui/text", 1000L, false));
+        sink.accept(record("ccui/text", -5L, true));
+        sink.accept(record("ccui/text", null, false));
+        sink.accept(record("ccui/image", 7L, true));
+        sink.end(null);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("CCOL", new String(readBytes(in, 4), StandardCharsets.US_ASCII));
+        assertEquals(ColumnarSink.VERSION, in.readUnsignedByte());
+        assertEquals(3, readVarint(in));
+        assertEquals("type", readString(in));
+        assertEquals(ColumnarSink.STRING, in.readUnsignedByte());
+        assertEquals("modified", readString(in));
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals("deleted", readString(in));
+        assertEquals(ColumnarSink.BOOLEAN, in.readUnsignedByte());
+
+        // first group: three rows
+        assertEquals(3, readVarint(in));
+        assertEquals(ColumnarSink.DICTIONARY, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(1, readVarint(in));
+        assertEquals("ccui/text", readString(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(0b011, in.readUnsignedByte());
+        assertEquals(1000L, readZigzag(in));
+        assertEquals(-5L, readZigzag(in));
+        assertEquals(ColumnarSink.BOOLEAN, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(0b010, in.readUnsignedByte());
+
+        // second group: one row, too few to repeat for a dictionary
+        assertEquals(1, readVarint(in));
+        assertEquals(ColumnarSink.STRING, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals("ccui/image", readString(in));
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(7L, readZigzag(in));
+        assertEquals(ColumnarSink.BOOLEAN, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(1, in.readUnsignedByte());
+
+        assertEquals(0, readVarint(in));
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(-1, in.read());
+        assertEquals(4, sink.getCount());
+    }
+
+    @Test
+    void keepsTheTypeOfTheFirstGroup() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarSink sink = new ColumnarSink(bytes, 1);
+        sink.begin(Arrays.asList(new ExtractRule("size", ExtractType.PROPERTY, null, "size")));
+        sink.accept(JsonNodeFactory.instance.objectNode().put("size", 3L));
+        sink.accept(JsonNodeFactory.instance.objectNode().put("size", 2.5d));
+        sink.accept(JsonNodeFactory.instance.objectNode().put("size", ""));
+        sink.end("maxResults");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        readBytes(in, 5);
+        assertEquals(1, readVarint(in));
+        assertEquals("size", readString(in));
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals(1, readVarint(in));
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(3L, readZigzag(in));
+        // neither fits a LONG column, so both are missing
+        assertEquals(1, readVarint(in));
+        assertEquals(ColumnarSink.NULL, in.readUnsignedByte());
+        assertEquals(1, readVarint(in));
+        assertEquals(ColumnarSink.NULL, in.readUnsignedByte());
+        assertEquals(0, readVarint(in));
+        // truncated
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals("maxResults", readString(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void emptyResultWritesHeaderOnly() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarSink sink = new ColumnarSink(bytes);
+
+        sink.begin(Collections.<ExtractRule>emptyList());
+        sink.end(null);
+
+        assertEquals(Arrays.toString(new byte[] { 'C', 'C', 'O', 'L', 2, 0, 0, 0 }),
+                Arrays.toString(bytes.toByteArray()));
+    }
+
+    private static ObjectNode record(String type, Long modified, boolean deleted) {
+        ObjectNode record = JsonNodeFactory.instance.objectNode().put("type", type).put("deleted", deleted);
+        if (modified != null) {
+            record.put("modified", modified.longValue());
+        }
+        return record;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in, (int) readVarint(in)), StandardCharsets.UTF_8);
+    }
+
+    private static long readZigzag(DataInputStream in) throws IOException {
+        long v = readVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
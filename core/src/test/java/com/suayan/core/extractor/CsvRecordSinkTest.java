@@ -0,0 +1,74 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class CsvRecordSinkTest {
+
+    @Test
+    void headerFollowsRules() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvRecordSink sink = new CsvRecordSink(out);
+        List<ExtractRule> rules = Arrays.asList(
+                new ExtractRule("title", ExtractType.TITLE),
+                new ExtractRule("path", ExtractType.PATH));
+
+        sink.begin(rules);
+        sink.accept(record().put("path", "/content/a").put("title", "A, with comma"));
+        sink.accept(record().put("path", "/content/b"));
+        sink.end(null);
+
+        assertEquals(2, sink.getCount());
+        assertEquals("title,path\n\"A, with comma\",/content/a\n,/content/b\n", out.toString());
+    }
+
+    @Test
+    void emptyResultWritesHeaderOnly() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvRecordSink sink = new CsvRecordSink(out);
+
+        sink.begin(Arrays.asList(new ExtractRule("name", ExtractType.NAME)));
+        sink.end(null);
+
+        assertEquals(0, sink.getCount());
+        assertEquals("name\n", out.toString());
+    }
+
+    @Test
+    void truncatedResultEndsWithATrailerRow() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvRecordSink sink = new CsvRecordSink(out);
+
+        sink.begin(Arrays.asList(new ExtractRule("name", ExtractType.NAME), new ExtractRule("path", ExtractType.PATH)));
+        sink.accept(record().put("name", "a").put("path", "/content/a"));
+        sink.end("cancelled");
+
+        assertEquals("name,path\na,/content/a\n@truncated:cancelled,\n", out.toString());
+    }
+
+    @Test
+    void headerFromFirstRecordWithoutRules() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvRecordSink sink = new CsvRecordSink(out);
+
+        sink.begin(new ArrayList<ExtractRule>());
+        sink.accept(record().put("jcr:title", "A"));
+        sink.end(null);
+
+        assertEquals("jcr:title\nA\n", out.toString());
+    }
+
+    private static ObjectNode record() {
+        return JsonNodeFactory.instance.objectNode();
+    }
+}
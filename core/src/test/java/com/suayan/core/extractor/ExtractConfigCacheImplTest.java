@@ -0,0 +1,85 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ExtractConfigCacheImplTest {
+
+    private static final String PAGES = "apps/ccui/extractor/pages.json";
+    private static final String TYPES = "apps/ccui/extractor/types.json";
+
+    private ExtractConfigCacheImpl cache;
+    private JcrReader jcrReader;
+
+    @BeforeEach
+    void setUp() {
+        jcrReader = mock(JcrReader.class);
+        when(jcrReader.readToString(PAGES)).thenReturn("{\"query\":\"SELECT * FROM [cq:Page]\"}");
+        when(jcrReader.readToString(TYPES)).thenReturn("{\"query\":\"SELECT * FROM [nt:base]\"}");
+        when(jcrReader.getLastModified(PAGES)).thenReturn(1000L);
+        when(jcrReader.getLastModified(TYPES)).thenReturn(1000L);
+        cache = new ExtractConfigCacheImpl();
+        cache.jcrReader = jcrReader;
+    }
+
+    @Test
+    void reusesTheConfigWhileUnmodified() {
+        ExtractConfig first = cache.getConfig(PAGES);
+        ExtractConfig second = cache.getConfig(PAGES);
+
+        assertEquals("SELECT * FROM [cq:Page]", first.getQuery());
+        assertSame(first, second);
+        verify(jcrReader, times(1)).readToString(PAGES);
+        verify(jcrReader, times(2)).getLastModified(PAGES);
+    }
+
+    @Test
+    void reloadsOnceLastModifiedChanges() {
+        ExtractConfig first = cache.getConfig(PAGES);
+        when(jcrReader.getLastModified(PAGES)).thenReturn(2000L);
+        when(jcrReader.readToString(PAGES)).thenReturn("{\"query\":\"SELECT * FROM [dam:Asset]\"}");
+
+        ExtractConfig second = cache.getConfig(PAGES);
+
+        assertNotSame(first, second);
+        assertEquals("SELECT * FROM [dam:Asset]", second.getQuery());
+        assertSame(second, cache.getConfig(PAGES));
+        verify(jcrReader, times(2)).readToString(PAGES);
+    }
+
+    @Test
+    void dropsChangedConfigs() {
+        ExtractConfig pages = cache.getConfig(PAGES);
+        ExtractConfig types = cache.getConfig(TYPES);
+
+        cache.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/" + PAGES + "/jcr:content", false)));
+
+        assertNotSame(pages, cache.getConfig(PAGES));
+        assertSame(types, cache.getConfig(TYPES));
+        verify(jcrReader, times(2)).readToString(PAGES);
+        verify(jcrReader, times(1)).readToString(TYPES);
+    }
+
+    @Test
+    void doesNotCacheUnparsableConfigs() {
+        when(jcrReader.readToString(PAGES)).thenReturn("");
+
+        assertNull(cache.getConfig(PAGES));
+        assertNull(cache.getConfig(PAGES));
+        verify(jcrReader, times(2)).readToString(PAGES);
+    }
+}
@@ -0,0 +1,51 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class ExtractExplainTest {
+
+    @Test
+    void readsTheIndexOfEachSelector() {
+        ExtractExplain explain = new ExtractExplain("SELECT * FROM [cq:Page]", "JCR-SQL2",
+                "[cq:Page] as [a] /* lucene:cqPageLucene(/oak:index/cqPageLucene) +:ancestors:/content */\n"
+                        + "[nt:base] as [b] /* property cqTemplate(cq:template) cq:template = /apps/t */");
+
+        assertEquals(Arrays.asList("lucene:cqPageLucene(/oak:index/cqPageLucene)", "property cqTemplate(cq:template)"),
+                explain.getIndexes());
+        assertTrue(explain.isCovered());
+        assertTrue(explain.getWarnings().isEmpty());
+        assertEquals(-1, explain.getCost(), 0);
+    }
+
+    @Test
+    void flagsTraversal() {
+        ExtractExplain explain = new ExtractExplain("SELECT * FROM [nt:base]", "JCR-SQL2",
+                "[nt:base] as [a] /* traverse \"/content//*\" where isdescendantnode([a], [/content]) */");
+
+        assertTrue(explain.isTraversal());
+        assertFalse(explain.isCovered());
+        assertEquals(1, explain.getWarnings().size());
+    }
+
+    @Test
+    void reportsTheRunOnlyWhenRun() {
+        ExtractExplain explain = new ExtractExplain("SELECT * FROM [cq:Page]", "JCR-SQL2", null);
+
+        assertFalse(explain.isCovered());
+        assertFalse(explain.toJson().has("queryMillis"));
+
+        explain.setRun(12, 30, 5, 6, "maxResults");
+        ObjectNode json = explain.toJson();
+        assertEquals(12, json.get("queryMillis").asLong());
+        assertEquals(30, json.get("extractMillis").asLong());
+        assertEquals("maxResults", json.get("truncated").asText());
+    }
+}
@@ -0,0 +1,78 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ExtractPageTest {
+
+    private static final String STATEMENT = "SELECT * FROM [cq:Page] AS s WHERE ISDESCENDANTNODE(s, '/content/ccui')";
+
+    @Test
+    void unpagedWithoutParams() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("conf", new String[] {"extract"});
+
+        ExtractPage page = ExtractPage.fromParams(params);
+
+        assertSame(ExtractPage.ALL, page);
+        assertFalse(page.isPaged());
+    }
+
+    @Test
+    void cursorResumesAtNextPage() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put(ExtractPage.LIMIT_PARAM, new String[] {"100"});
+        params.put(ExtractPage.OFFSET_PARAM, new String[] {"200"});
+        String cursor = ExtractPage.fromParams(params).next().toCursor(STATEMENT);
+
+        Map<String, String[]> nextParams = new HashMap<String, String[]>();
+        nextParams.put(ExtractPage.CURSOR_PARAM, new String[] {cursor});
+        ExtractPage next = ExtractPage.fromParams(nextParams);
+
+        assertEquals(300, next.getOffset());
+        assertEquals(100, next.getLimit());
+        assertNull(next.getAfter());
+    }
+
+    @Test
+    void keysetCursorResumesAfterThePath() {
+        String cursor = new ExtractPage(0, 50).after("/content/ccui/us/jcr:content").toCursor(STATEMENT);
+
+        ExtractPage next = ExtractPage.fromCursor(cursor);
+        next.checkStatement(STATEMENT);
+
+        assertEquals("/content/ccui/us/jcr:content", next.getAfter());
+        assertEquals(0, next.getOffset());
+        assertEquals(50, next.getLimit());
+    }
+
+    @Test
+    void cursorIsBoundToItsStatement() {
+        ExtractPage next = ExtractPage.fromCursor(new ExtractPage(0, 50).after("/content/a").toCursor(STATEMENT));
+        ExtractPage.ALL.checkStatement("SELECT * FROM [dam:Asset]");
+
+        assertThrows(IllegalArgumentException.class, () -> next.checkStatement("SELECT * FROM [dam:Asset]"));
+
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put(ExtractPage.CURSOR_PARAM, new String[] {new ExtractPage(0, 50).after("/content/a").toCursor(STATEMENT)});
+        params.put(ExtractPage.OFFSET_PARAM, new String[] {"10"});
+        assertThrows(IllegalArgumentException.class, () -> ExtractPage.fromParams(params));
+    }
+
+    @Test
+    void rejectsInvalidParams() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put(ExtractPage.LIMIT_PARAM, new String[] {"-1"});
+        assertThrows(IllegalArgumentException.class, () -> ExtractPage.fromParams(params));
+
+        assertThrows(IllegalArgumentException.class, () -> ExtractPage.fromCursor("not a cursor"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ExtractPlanTest {
+
+    @Test
+    void groupsRulesBySubpath() {
+        List<ExtractRule> rules = Arrays.asList(
+                new ExtractRule("title", ExtractType.TITLE),
+                new ExtractRule("path", ExtractType.PATH),
+                new ExtractRule("keywords", ExtractType.PROPERTY, "/jcr:content", "metakeywords"),
+                new ExtractRule("tags", ExtractType.MULTI_PROPERTY, "/jcr:content", "cq:tags"));
+
+        ExtractPlan plan = ExtractPlan.compile(rules);
+
+        assertEquals(4, plan.getRules().size());
+        assertNull(plan.getAllRule());
+        assertEquals(2, plan.getGroups().size());
+        ExtractPlan.Group content = plan.getGroups().get(0);
+        assertEquals("jcr:content", content.getRelativePath());
+        assertEquals(3, content.getRules().size());
+        assertArrayEquals(new String[] {"jcr:title", "metakeywords", "cq:tags"}, content.getPropertyNames());
+        assertEquals("", plan.getGroups().get(1).getRelativePath());
+    }
+
+    @Test
+    void planIsDetachedFromRules() {
+        ExtractRule rule = new ExtractRule("name", ExtractType.NAME);
+        ExtractPlan plan = ExtractPlan.compile(Arrays.asList(rule));
+
+        rule.setTargetProperty("renamed");
+
+        assertEquals("name", plan.getRules().get(0).getTargetProperty());
+    }
+}
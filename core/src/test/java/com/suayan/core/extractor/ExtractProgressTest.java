@@ -0,0 +1,99 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ExtractProgressTest {
+
+    private Node content;
+
+    @BeforeEach
+    void setUp() throws RepositoryException {
+        Session session = MockJcr.newSession();
+        content = session.getRootNode().addNode("content", "nt:unstructured");
+        for (int i = 0; i < 5; i++) {
+            content.addNode("page" + i, "nt:unstructured");
+        }
+    }
+
+    @Test
+    void scansTheWholeResultWithoutBudget() throws RepositoryException {
+        ExtractProgress progress = new ExtractProgress();
+
+        assertEquals(5, drain(progress.track(content.getNodes())));
+        assertEquals(5, progress.getScanned());
+        assertFalse(progress.isTruncated());
+        assertNull(progress.getTruncatedReason());
+    }
+
+    @Test
+    void stopsAtTheResultBudget() throws RepositoryException {
+        ExtractProgress progress = new ExtractProgress();
+        progress.setBudget(3, 0);
+
+        assertEquals(3, drain(progress.track(content.getNodes())));
+        assertEquals("maxResults", progress.getTruncatedReason());
+    }
+
+    @Test
+    void aBudgetOfTheResultSizeIsNotTruncated() throws RepositoryException {
+        ExtractProgress progress = new ExtractProgress();
+        progress.setBudget(5, 0);
+
+        assertEquals(5, drain(progress.track(content.getNodes())));
+        assertFalse(progress.isTruncated());
+    }
+
+    @Test
+    void stopsAtTheDeadline() throws RepositoryException {
+        ExtractProgress progress = new ExtractProgress();
+        progress.setBudget(0, System.currentTimeMillis() - 1);
+
+        assertEquals(0, drain(progress.track(content.getNodes())));
+        assertEquals("maxMillis", progress.getTruncatedReason());
+    }
+
+    @Test
+    void stopsOnceCancelled() throws RepositoryException {
+        ExtractProgress progress = new ExtractProgress();
+        NodeIterator it = progress.track(content.getNodes());
+        it.nextNode();
+        progress.cancel();
+
+        assertFalse(it.hasNext());
+        assertEquals(1, progress.getScanned());
+        assertEquals("cancelled", progress.getTruncatedReason());
+    }
+
+    @Test
+    void budgetsAreReadFromTheConfig() throws JSONException {
+        ExtractConfig config = ExtractConfig.fromJson(
+                new JSONObject("{\"query\": \"SELECT * FROM [cq:Page]\", \"maxResults\": 100, \"maxMillis\": 2000}"));
+
+        assertEquals(100, config.getMaxResults());
+        assertEquals(2000, config.getMaxMillis());
+        assertEquals(100, ExtractContext.limit(config.getMaxResults(), 500));
+        assertEquals(1000, ExtractContext.limit(config.getMaxMillis(), 1000));
+    }
+
+    private static int drain(NodeIterator it) {
+        int count = 0;
+        while (it.hasNext()) {
+            it.nextNode();
+            count++;
+        }
+        return count;
+    }
+}
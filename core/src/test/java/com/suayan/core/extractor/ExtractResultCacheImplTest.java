@@ -0,0 +1,125 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+class ExtractResultCacheImplTest {
+
+    private static final String QUERY = "/jcr:root/content/ccui/us//element(*)[@sling:resourceType='ccui/components/text']";
+
+    private ExtractResultCacheImpl cache;
+    private ExtractResultKey key;
+    private List<ExtractRule> rules;
+
+    @BeforeEach
+    void setUp() throws NotCompliantMBeanException {
+        ExtractResultCacheConfig config = mock(ExtractResultCacheConfig.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(2);
+        when(config.maxEntryRecords()).thenReturn(10);
+        when(config.ttlSeconds()).thenReturn(60);
+        cache = new ExtractResultCacheImpl();
+        cache.activate(config);
+        rules = Arrays.asList(new ExtractRule("path", ExtractType.PATH));
+        key = key(QUERY);
+    }
+
+    @Test
+    void replaysRecordedResult() throws IOException {
+        assertEquals(-1, cache.replay(key, rules, new JsonListSink()));
+        extract(key, "/content/ccui/us/a");
+
+        JsonListSink sink = new JsonListSink();
+        assertEquals(1, cache.replay(key, rules, sink));
+        assertEquals("/content/ccui/us/a", sink.getRecords().get(0).get("path").asText());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void changeUnderRootInvalidates() throws IOException {
+        extract(key, "/content/ccui/us/a");
+
+        cache.onChange(changes("/content/ccui/fr/a"));
+        assertEquals(1, cache.getSize());
+
+        cache.onChange(changes("/content/ccui/us/a/jcr:content"));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void resultSpanningAChangeIsNotStored() throws IOException {
+        ExtractSink sink = cache.record(key, new JsonListSink());
+        sink.begin(rules);
+        cache.onChange(changes("/content/other"));
+        sink.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/ccui/us/a"));
+        sink.end(null);
+
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void truncatedResultIsNotStored() throws IOException {
+        ExtractSink sink = cache.record(key, new JsonListSink());
+        sink.begin(rules);
+        sink.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/ccui/us/a"));
+        sink.end("maxResults");
+
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        ExtractResultKey second = key(QUERY + " order by @jcr:title");
+        ExtractResultKey third = key(QUERY + " order by @jcr:created");
+        extract(key, "/content/ccui/us/a");
+        extract(second, "/content/ccui/us/b");
+        cache.replay(key, rules, new JsonListSink());
+        extract(third, "/content/ccui/us/c");
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(-1, cache.replay(second, rules, new JsonListSink()));
+    }
+
+    @Test
+    void rootPathFromQuery() {
+        assertEquals("/content/ccui/us", key.getRootPath());
+        assertEquals("/content/dam", ExtractResultKey.rootPathOf(
+                "SELECT * FROM [dam:Asset] AS s WHERE ISDESCENDANTNODE(s, '/content/dam/a') OR ISDESCENDANTNODE(s, '/content/dam/b')",
+                "JCR-SQL2"));
+        assertEquals("/", ExtractResultKey.rootPathOf("SELECT * FROM [nt:base]", "JCR-SQL2"));
+    }
+
+    private ExtractResultKey key(String statement) {
+        return new ExtractResultKey(statement, "xpath", ExtractPlan.compile(rules), ExtractPage.ALL,
+                ExtractContext.defaults());
+    }
+
+    private void extract(ExtractResultKey resultKey, String path) throws IOException {
+        ExtractSink sink = cache.record(resultKey, new JsonListSink());
+        sink.begin(rules);
+        sink.accept(JsonNodeFactory.instance.objectNode().put("path", path));
+        sink.end(null);
+    }
+
+    private static List<ResourceChange> changes(String path) {
+        return Collections.singletonList(new ResourceChange(ChangeType.CHANGED, path, false));
+    }
+}
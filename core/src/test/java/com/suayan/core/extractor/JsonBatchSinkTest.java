@@ -0,0 +1,81 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class JsonBatchSinkTest {
+
+    @Test
+    void writesResultsKeyedByName() throws IOException {
+        StringWriter out = new StringWriter();
+        JsonBatchSink sink = new JsonBatchSink(out);
+
+        ExtractSink pages = sink.open("pages");
+        pages.begin(Collections.<ExtractRule>emptyList());
+        pages.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/a"));
+        pages.end("maxResults");
+        sink.error("broken", "Unknown extract config.");
+        ExtractSink types = sink.open("types");
+        types.begin(Collections.<ExtractRule>emptyList());
+        types.end(null);
+        sink.end();
+
+        assertEquals("{\"pages\":[{\"path\":\"/content/a\"},{\"@truncated\":\"maxResults\"}],\"broken\":{\"error\":\"Unknown extract config.\"},"
+                + "\"types\":[]}", out.toString());
+    }
+
+    @Test
+    void extractsOfABatchShareTheMemo() throws RepositoryException {
+        Session session = MockJcr.newSession();
+        Node page = session.getRootNode().addNode("content", "nt:unstructured").addNode("a", "nt:unstructured");
+        page.addNode("jcr:content", "nt:unstructured").setProperty("jcr:title", "A");
+        ExtractMemo memo = new ExtractMemo(10);
+        ExtractContext context = ExtractContext.defaults().withMemo(memo);
+        ExtractPlan titles = ExtractPlan.compile(Arrays.asList(
+                new ExtractRule("title", ExtractType.TITLE, "jcr:content", null)));
+        ExtractPlan everything = ExtractPlan.compile(Arrays.asList(new ExtractRule("all", ExtractType.ALL)));
+
+        ObjectNode first = new JsonExtractor(session, titles, context).getJsonObject(page, JsonNodeFactory.instance.objectNode());
+        first.put("title", "changed");
+        ObjectNode second = new JsonExtractor(session, titles, context).getJsonObject(page, JsonNodeFactory.instance.objectNode());
+        new JsonExtractor(session, everything, context).getJsonObject(page, JsonNodeFactory.instance.objectNode());
+        ObjectNode deep = new JsonExtractor(session, everything, context).getJsonObject(page, JsonNodeFactory.instance.objectNode());
+
+        assertEquals("A", second.get("title").asText());
+        assertEquals("A", deep.get("jcr:title").asText());
+        assertEquals(2, memo.getHitCount());
+    }
+
+    @Test
+    void extractsWithOtherLimitsDoNotShareResults() throws RepositoryException {
+        Session session = MockJcr.newSession();
+        Node page = session.getRootNode().addNode("content", "nt:unstructured").addNode("a", "nt:unstructured");
+        page.addNode("jcr:content", "nt:unstructured").addNode("par", "nt:unstructured")
+                .addNode("text", "nt:unstructured").setProperty("text", "A");
+        ExtractMemo memo = new ExtractMemo(10);
+        ExtractPlan everything = ExtractPlan.compile(Arrays.asList(new ExtractRule("all", ExtractType.ALL)));
+
+        ObjectNode shallow = new JsonExtractor(session, everything, new ExtractContext(true, 1, ExtractContext.UNLIMITED)
+                .withMemo(memo)).getJsonObject(page, JsonNodeFactory.instance.objectNode());
+        ObjectNode deep = new JsonExtractor(session, everything, ExtractContext.defaults().withMemo(memo))
+                .getJsonObject(page, JsonNodeFactory.instance.objectNode());
+
+        assertNotEquals(shallow, deep);
+        assertEquals(0, memo.getHitCount());
+    }
+}
@@ -0,0 +1,91 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class JsonExtractorTest {
+
+    private Node node;
+    private List<ExtractRule> rules;
+
+    @BeforeEach
+    void setUp() throws RepositoryException {
+        node = MockJcr.newSession().getRootNode().addNode("content", "nt:unstructured");
+        Calendar modified = Calendar.getInstance();
+        modified.setTimeInMillis(1000L);
+        node.setProperty("hidden", true);
+        node.setProperty("width", 640L);
+        node.setProperty("ratio", 1.5d);
+        node.setProperty("modified", modified);
+        node.setProperty("title", "\"A\" ");
+        rules = Arrays.asList(
+                new ExtractRule("hidden", ExtractType.PROPERTY, null, "hidden"),
+                new ExtractRule("width", ExtractType.PROPERTY, null, "width"),
+                new ExtractRule("ratio", ExtractType.PROPERTY, null, "ratio"),
+                new ExtractRule("modified", ExtractType.PROPERTY, null, "modified"),
+                new ExtractRule("title", ExtractType.PROPERTY, null, "title"));
+    }
+
+    @Test
+    void propertiesAreStrings() {
+        ObjectNode record = extract(ExtractContext.defaults());
+
+        assertEquals("true", record.get("hidden").textValue());
+        assertEquals("640", record.get("width").textValue());
+        assertEquals("A", record.get("title").textValue());
+    }
+
+    @Test
+    void columnarPropertiesKeepTheirJcrType() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarSink sink = new ColumnarSink(bytes);
+        sink.begin(rules);
+        sink.accept(extract(ExtractContext.defaults().withTypedValues()));
+        sink.end(null);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.skipBytes(6);
+        int[] types = new int[5];
+        for (int i = 0; i < types.length; i++) {
+            in.skipBytes(in.readUnsignedByte());
+            types[i] = in.readUnsignedByte();
+        }
+        assertEquals(Arrays.toString(new int[] { ColumnarSink.BOOLEAN, ColumnarSink.LONG, ColumnarSink.DOUBLE,
+                ColumnarSink.LONG, ColumnarSink.STRING }), Arrays.toString(types));
+        // the first group: one row of a present BOOLEAN, then the LONG 640
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(ColumnarSink.BOOLEAN, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(ColumnarSink.LONG, in.readUnsignedByte());
+        assertEquals(0, in.readUnsignedByte());
+        assertEquals(1280 & 0x7F | 0x80, in.readUnsignedByte());
+        assertEquals(1280 >>> 7, in.readUnsignedByte());
+    }
+
+    private ObjectNode extract(ExtractContext context) {
+        try {
+            return new JsonExtractor(node.getSession(), ExtractPlan.compile(rules), context)
+                    .getJsonObject(node, JsonNodeFactory.instance.objectNode());
+        } catch (RepositoryException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
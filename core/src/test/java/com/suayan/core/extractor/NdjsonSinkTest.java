@@ -0,0 +1,52 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+class NdjsonSinkTest {
+
+    @Test
+    void writesOneRecordPerLine() throws IOException {
+        StringWriter out = new StringWriter();
+        NdjsonSink sink = new NdjsonSink(out);
+
+        sink.begin(Collections.<ExtractRule>emptyList());
+        sink.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/a"));
+        sink.accept(JsonNodeFactory.instance.objectNode().put("title", "line\nbreak"));
+        sink.end(null);
+
+        assertEquals(2, sink.getCount());
+        assertEquals("{\"path\":\"/content/a\"}\n{\"title\":\"line\\nbreak\"}\n", out.toString());
+    }
+
+    @Test
+    void truncatedResultEndsWithATrailer() throws IOException {
+        StringWriter out = new StringWriter();
+        NdjsonSink sink = new NdjsonSink(out);
+
+        sink.begin(Collections.<ExtractRule>emptyList());
+        sink.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/a"));
+        sink.end("maxMillis");
+
+        assertEquals(1, sink.getCount());
+        assertEquals("{\"path\":\"/content/a\"}\n{\"@truncated\":\"maxMillis\"}\n", out.toString());
+    }
+
+    @Test
+    void emptyResultIsEmpty() throws IOException {
+        StringWriter out = new StringWriter();
+        NdjsonSink sink = new NdjsonSink(out);
+
+        sink.begin(Collections.<ExtractRule>emptyList());
+        sink.end(null);
+
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,71 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class NodeTraverserTest {
+
+    private Node root;
+
+    @BeforeEach
+    void setUp() throws RepositoryException {
+        Session session = MockJcr.newSession();
+        root = session.getRootNode().addNode("content", "nt:unstructured");
+        root.setProperty("title", "Root");
+        Node a = root.addNode("a", "nt:unstructured");
+        a.setProperty("title", "A");
+        a.addNode("a1", "nt:unstructured").setProperty("title", "A1");
+        root.addNode("b", "nt:unstructured").setProperty("title", "B");
+    }
+
+    @Test
+    void readsWholeTreeWithoutLimits() throws RepositoryException {
+        NodeTraverser traverser = new NodeTraverser(ExtractContext.UNLIMITED, ExtractContext.UNLIMITED);
+
+        ObjectNode json = traverser.traverse(root);
+
+        assertEquals("Root", json.get("title").asText());
+        assertEquals("A1", json.get("a").get("a1").get("title").asText());
+        assertEquals("B", json.get("b").get("title").asText());
+        assertFalse(json.has("jcr:primaryType"));
+        assertFalse(traverser.isTruncated());
+    }
+
+    @Test
+    void stopsAtMaxDepth() throws RepositoryException {
+        ObjectNode json = new NodeTraverser(1, ExtractContext.UNLIMITED).traverse(root);
+
+        assertEquals("A", json.get("a").get("title").asText());
+        assertFalse(json.get("a").has("a1"));
+    }
+
+    @Test
+    void stopsAtMaxNodes() throws RepositoryException {
+        NodeTraverser traverser = new NodeTraverser(ExtractContext.UNLIMITED, 3);
+
+        ObjectNode json = traverser.traverse(root);
+
+        assertTrue(json.get("a").has("a1"));
+        assertFalse(json.has("b"));
+        assertTrue(traverser.isTruncated());
+    }
+
+    @Test
+    void limitKeepsTheTighterBound() {
+        assertEquals(5, ExtractContext.limit(ExtractContext.UNLIMITED, 5));
+        assertEquals(3, ExtractContext.limit(3, ExtractContext.UNLIMITED));
+        assertEquals(3, ExtractContext.limit(8, 3));
+        assertEquals(ExtractContext.UNLIMITED, ExtractContext.limit(ExtractContext.UNLIMITED, ExtractContext.UNLIMITED));
+    }
+}
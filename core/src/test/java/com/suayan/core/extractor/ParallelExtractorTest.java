@@ -0,0 +1,71 @@
+package com.suayan.core.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelExtractorTest {
+
+    private ExecutorService executor;
+    private Node content;
+    private ExtractPlan plan;
+
+    @BeforeEach
+    void setUp() throws RepositoryException {
+        executor = Executors.newFixedThreadPool(2);
+        content = MockJcr.newSession().getRootNode().addNode("content", "nt:unstructured");
+        for (int i = 0; i < 5; i++) {
+            content.addNode("page" + i, "nt:unstructured");
+        }
+        plan = ExtractPlan.compile(Arrays.asList(new ExtractRule("path", ExtractType.PATH)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writesEveryBatchInOrder() throws Exception {
+        Session worker = content.getSession();
+        JsonListSink sink = new JsonListSink();
+
+        int count = new ParallelExtractor(executor, 2).extract(content.getNodes(), plan, ExtractContext.defaults(),
+                sink, Collections.singletonList(worker));
+
+        assertEquals(5, count);
+        assertEquals("/content/page4", sink.getRecords().get(4).get("path").asText());
+    }
+
+    @Test
+    void failsInsteadOfDroppingAFailedBatch() throws Exception {
+        Session broken = mock(Session.class);
+        when(broken.getNode(anyString())).thenThrow(new IllegalStateException("broken"));
+        JsonListSink sink = new JsonListSink();
+        List<Session> workers = Collections.singletonList(broken);
+
+        IOException e = assertThrows(IOException.class, () -> new ParallelExtractor(executor, 2)
+                .extract(content.getNodes(), plan, ExtractContext.defaults(), sink, workers));
+
+        assertEquals("broken", e.getCause().getMessage());
+        assertEquals(0, sink.getRecords().size());
+    }
+}
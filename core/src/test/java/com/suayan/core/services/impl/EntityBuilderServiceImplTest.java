@@ -0,0 +1,250 @@
+package com.suayan.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.apache.sling.testing.mock.jcr.MockQueryResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.suayan.core.services.EntityBuilderScope;
+import com.suayan.core.services.EntityBuilderServiceConfig;
+import com.suayan.core.services.EntityIterator;
+import com.suayan.core.sling.SlingQueryStatement;
+
+class EntityBuilderServiceImplTest {
+
+    private EntityBuilderServiceImpl entityBuilder;
+    private EntityBuilderServiceConfig config;
+    private ResourceResolverFactory factory;
+    private Session session;
+    private final AtomicInteger adapted = new AtomicInteger();
+    private final AtomicInteger resolved = new AtomicInteger();
+    private final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<ResourceResolver> resolvers = Collections.synchronizedList(new ArrayList<ResourceResolver>());
+    private final Thread caller = Thread.currentThread();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = MockJcr.newSession();
+        config = mock(EntityBuilderServiceConfig.class);
+        when(config.maxParallelism()).thenReturn(3);
+        when(config.parallelThreshold()).thenReturn(4);
+        factory = mock(ResourceResolverFactory.class);
+        when(factory.getServiceResourceResolver(anyMap())).thenAnswer(invocation -> {
+            ResourceResolver resolver = mock(ResourceResolver.class);
+            resolvers.add(resolver);
+            when(resolver.isLive()).thenReturn(true);
+            when(resolver.adaptTo(Session.class)).thenReturn(session);
+            when(resolver.getResource(anyString())).thenAnswer(call -> {
+                String path = call.getArgument(0);
+                if (path.contains("missing")) {
+                    return null;
+                }
+                resolved.incrementAndGet();
+                Map<String, Object> properties = new HashMap<String, Object>();
+                properties.put("jcr:title", path.substring(path.lastIndexOf('/') + 1));
+                properties.put("cq:tags", new String[] { "ccui:a", "ccui:b" });
+                properties.put("hideInNav", path.contains("hidden") ? "true" : "");
+                Resource resource = mock(Resource.class);
+                when(resource.getValueMap()).thenReturn(new ValueMapDecorator(properties));
+                when(resource.adaptTo(String.class)).thenAnswer(adapt -> {
+                    if (path.contains("flaky") && Thread.currentThread() != caller) {
+                        throw new IllegalStateException("flaky " + path);
+                    }
+                    threads.add(Thread.currentThread().getName());
+                    adapted.incrementAndGet();
+                    return path;
+                });
+                return resource;
+            });
+            return resolver;
+        });
+        entityBuilder = new EntityBuilderServiceImpl();
+        entityBuilder.setResourceResolverFactory(factory);
+        entityBuilder.entityCache = new EntityCacheImpl();
+        entityBuilder.activate(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityBuilder.deactivate(config);
+    }
+
+    @Test
+    void adaptsInParallelInInputOrder() {
+        List<String> paths = new ArrayList<String>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            String path = i == 4 ? "/content/missing" : "/content/page" + i;
+            paths.add(path);
+            if (i != 4) {
+                expected.add(path + "/jcr:content");
+            }
+        }
+
+        List<String> entities = entityBuilder.toList(paths, String.class, true);
+
+        assertEquals(expected, entities);
+        assertTrue(threads.size() > 1);
+        assertEquals(1, entityBuilder.getParallelCount());
+        assertEquals(1, entityBuilder.getAdaptTimings().length);
+        assertTrue(entityBuilder.getAdaptTimings()[0].startsWith("java.lang.String: 9 adapted"));
+    }
+
+    @Test
+    void slicesThatFailOnThePoolAreAdaptedOnTheCallingThread() {
+        List<String> paths = new ArrayList<String>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 9; i++) {
+            paths.add("/content/" + (i == 7 ? "flaky" : "page") + i);
+            expected.add(paths.get(i) + "/jcr:content");
+        }
+
+        List<String> entities = entityBuilder.toList(paths, String.class, true);
+
+        assertEquals(expected, entities);
+        // three slices, and the failed one again on the calling thread
+        assertEquals(4, resolvers.size());
+    }
+
+    @Test
+    void shortListsStayOnTheCallingThread() {
+        List<String> entities = entityBuilder.toList(Arrays.asList("/content/a", "/content/b"), String.class, true);
+
+        assertEquals(Arrays.asList("/content/a/jcr:content", "/content/b/jcr:content"), entities);
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+        assertEquals(0, entityBuilder.getParallelCount());
+    }
+
+    @Test
+    void callsInAScopeShareOneResolver() throws Exception {
+        try (EntityBuilderScope scope = entityBuilder.openScope()) {
+            entityBuilder.toItem("/content/a", String.class);
+            try (EntityBuilderScope nested = entityBuilder.openScope()) {
+                entityBuilder.toList(Arrays.asList("/content/b"), String.class);
+            }
+            entityBuilder.toItem("/content/c", String.class);
+        }
+        verify(factory, times(1)).getServiceResourceResolver(anyMap());
+
+        entityBuilder.toItem("/content/a", String.class);
+        entityBuilder.toItem("/content/b", String.class);
+        verify(factory, times(3)).getServiceResourceResolver(anyMap());
+    }
+
+    @Test
+    void batchReadsResolveEachPathOnceWithOneResolver() throws Exception {
+        Map<String, List<String>> properties = new LinkedHashMap<String, List<String>>();
+        properties.put("/content/nav/hidden", Arrays.asList("hideInNav", "jcr:title", "cq:tags", "nope"));
+        properties.put("/content/nav/shown", Arrays.asList("hideInNav", "jcr:title"));
+        properties.put("/content/nav/missing", Arrays.asList("jcr:title"));
+
+        Map<String, Set<String>> hidden = entityBuilder.pathsHaveProperties(properties);
+        Map<String, Map<String, String>> values = entityBuilder.getResourceProperties(properties);
+        Map<String, Map<String, String[]>> tags = entityBuilder.getResourceMultiProperties(
+                Collections.singletonMap("/content/nav/shown", Arrays.asList("cq:tags", "jcr:title")));
+
+        assertEquals(Arrays.asList("/content/nav/hidden", "/content/nav/shown"), new ArrayList<String>(hidden.keySet()));
+        assertEquals(Arrays.asList("hideInNav", "jcr:title", "cq:tags"),
+                new ArrayList<String>(hidden.get("/content/nav/hidden")));
+        assertEquals(Collections.singleton("jcr:title"), hidden.get("/content/nav/shown"));
+        assertEquals("hidden", values.get("/content/nav/hidden").get("jcr:title"));
+        assertEquals("", values.get("/content/nav/shown").get("hideInNav"));
+        assertFalse(values.containsKey("/content/nav/missing"));
+        assertArrayEquals(new String[] { "ccui:a", "ccui:b" }, tags.get("/content/nav/shown").get("cq:tags"));
+        assertArrayEquals(new String[] { "shown" }, tags.get("/content/nav/shown").get("jcr:title"));
+        assertEquals(5, resolved.get());
+        verify(factory, times(3)).getServiceResourceResolver(anyMap());
+    }
+
+    @Test
+    void iterateAdaptsOnlyWhatIsRead() throws Exception {
+        Node content = session.getRootNode().addNode("content", "nt:unstructured");
+        List<Node> results = new ArrayList<Node>();
+        for (int i = 0; i < 100; i++) {
+            results.add(content.addNode("article" + i, "nt:unstructured"));
+        }
+        MockJcr.setQueryResult(session, results);
+
+        List<String> first = new ArrayList<String>();
+        try (EntityIterator<String> it = entityBuilder.iterate(
+                new SlingQueryStatement("/jcr:root/content/*", "xpath"), String.class, 0, 0)) {
+            while (first.size() < 5 && it.hasNext()) {
+                first.add(it.next());
+            }
+        }
+
+        assertEquals(Arrays.asList("/content/article0", "/content/article1", "/content/article2",
+                "/content/article3", "/content/article4"), first);
+        assertEquals(5, adapted.get());
+    }
+
+    @Test
+    void iterateReadsOnePage() throws Exception {
+        Node content = session.getRootNode().addNode("content", "nt:unstructured");
+        final List<Node> results = new ArrayList<Node>();
+        for (int i = 0; i < 10; i++) {
+            results.add(content.addNode("article" + i, "nt:unstructured"));
+        }
+        MockJcr.addQueryResultHandler(session, query -> {
+            try {
+                int offset = (int) query.getOffset();
+                return new MockQueryResult(results.subList(offset, Math.min(results.size(), offset + (int) query.getLimit())));
+            } catch (RepositoryException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        List<String> page = new ArrayList<String>();
+        try (EntityIterator<String> it = entityBuilder.iterate(
+                new SlingQueryStatement("/jcr:root/content/*", "xpath"), String.class, 3, 2)) {
+            while (it.hasNext()) {
+                page.add(it.next());
+            }
+        }
+
+        assertEquals(Arrays.asList("/content/article3", "/content/article4"), page);
+        assertEquals(2, adapted.get());
+    }
+
+    @Test
+    void iterateClosesOnceExhausted() {
+        EntityIterator<String> it = entityBuilder.iterate(new SlingQueryStatement("", "xpath"), String.class, 0, 0);
+
+        assertFalse(it.hasNext());
+        assertEquals(1, resolvers.size());
+        verify(resolvers.get(0)).close();
+        it.close();
+        verify(resolvers.get(0), times(1)).close();
+    }
+}
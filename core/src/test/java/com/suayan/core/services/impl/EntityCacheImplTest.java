@@ -0,0 +1,111 @@
+package com.suayan.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.suayan.core.services.EntityCacheConfig;
+
+class EntityCacheImplTest {
+
+    private EntityCacheImpl cache;
+
+    @BeforeEach
+    void setUp() throws NotCompliantMBeanException {
+        EntityCacheConfig config = mock(EntityCacheConfig.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(2);
+        when(config.types()).thenReturn(new String[] { StringBuilder.class.getName() });
+        cache = new EntityCacheImpl();
+        cache.activate(config);
+    }
+
+    @Test
+    void reusesModelsOfConfiguredTypes() {
+        Resource resource = resource("/content/a/jcr:content", 1000L);
+
+        StringBuilder first = cache.adapt(resource, StringBuilder.class);
+
+        assertSame(first, cache.adapt(resource, StringBuilder.class));
+        assertNotSame(cache.adapt(resource, String.class), cache.adapt(resource, String.class));
+        assertEquals(1, cache.getSize());
+        assertEquals(StringBuilder.class.getName() + ": 1 hits, 1 misses, 50% hit rate", cache.getTypeHitRates()[0]);
+    }
+
+    @Test
+    void aNewRevisionIsAdaptedAgain() {
+        StringBuilder first = cache.adapt(resource("/content/a/jcr:content", 1000L), StringBuilder.class);
+
+        assertNotSame(first, cache.adapt(resource("/content/a/jcr:content", 2000L), StringBuilder.class));
+    }
+
+    @Test
+    void changesAboveOrBelowInvalidate() {
+        cache.adapt(resource("/content/a/jcr:content", 1000L), StringBuilder.class);
+        cache.adapt(resource("/content/b/jcr:content", 1000L), StringBuilder.class);
+
+        cache.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/a/jcr:content/par/text", false)));
+        assertEquals(1, cache.getSize());
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/b", false)));
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    @Test
+    void changesLeaveSiblingsWithTheSamePrefix() {
+        cache.adapt(resource("/content/a", 1000L), StringBuilder.class);
+        cache.adapt(resource("/content/a-b/jcr:content", 1000L), StringBuilder.class);
+
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/a", false)));
+        assertEquals(1, cache.getSize());
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/", false)));
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsed() {
+        Resource a = resource("/content/a", 0L);
+        StringBuilder kept = cache.adapt(a, StringBuilder.class);
+        cache.adapt(resource("/content/b", 0L), StringBuilder.class);
+        cache.adapt(a, StringBuilder.class);
+        cache.adapt(resource("/content/c", 0L), StringBuilder.class);
+
+        assertSame(kept, cache.adapt(a, StringBuilder.class));
+        assertEquals(1, cache.getEvictionCount());
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/b", false)));
+        assertEquals(0, cache.getInvalidationCount());
+    }
+
+    private static Resource resource(String path, long lastModified) {
+        Resource resource = mock(Resource.class);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        if (lastModified > 0) {
+            Calendar date = Calendar.getInstance();
+            date.setTimeInMillis(lastModified);
+            properties.put("cq:lastModified", date);
+        }
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getValueMap()).thenReturn(new ValueMapDecorator(properties));
+        when(resource.adaptTo(StringBuilder.class)).thenAnswer(invocation -> new StringBuilder(path));
+        when(resource.adaptTo(String.class)).thenAnswer(invocation -> new String(path));
+        return resource;
+    }
+}
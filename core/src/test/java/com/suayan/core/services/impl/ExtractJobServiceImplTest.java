@@ -0,0 +1,135 @@
+package com.suayan.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.suayan.core.extractor.ExtractFormat;
+import com.suayan.core.extractor.ExtractProgress;
+import com.suayan.core.extractor.ExtractRule;
+import com.suayan.core.extractor.ExtractSink;
+import com.suayan.core.services.ExtractJob;
+import com.suayan.core.services.ExtractJobServiceConfig;
+import com.suayan.core.services.ScannerService;
+
+class ExtractJobServiceImplTest {
+
+    private ExtractJobServiceImpl service;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExtractJobServiceConfig config = mock(ExtractJobServiceConfig.class);
+        when(config.maxConcurrentJobs()).thenReturn(1);
+        when(config.maxQueuedJobs()).thenReturn(1);
+        when(config.retentionMinutes()).thenReturn(60);
+        service = new ExtractJobServiceImpl();
+        service.scanner = mock(ScannerService.class);
+        when(service.scanner.extractByJsonConfig(eq("pages"), anyMap(), any(ExtractSink.class),
+                any(ExtractProgress.class))).thenAnswer(invocation -> {
+                    ExtractSink sink = invocation.getArgument(2);
+                    sink.begin(Collections.<ExtractRule>emptyList());
+                    sink.accept(JsonNodeFactory.instance.objectNode().put("path", "/content/a"));
+                    sink.end(null);
+                    return 1;
+                });
+        when(service.scanner.extractByJsonConfig(eq("slow"), anyMap(), any(ExtractSink.class),
+                any(ExtractProgress.class))).thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return 0;
+                });
+        when(service.scanner.extractByJsonConfig(eq("broken"), anyMap(), any(ExtractSink.class),
+                any(ExtractProgress.class))).thenAnswer(invocation -> {
+                    throw new Exception("broken");
+                });
+        service.activate(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.deactivate();
+    }
+
+    @Test
+    void writesTheResultToAFile() throws Exception {
+        ExtractJob job = service.submit("pages", null, Collections.<String, String[]>emptyMap(), ExtractFormat.NDJSON);
+
+        awaitDone(job);
+
+        assertEquals(ExtractJob.State.SUCCEEDED, job.getState());
+        try (InputStream in = service.openResult(job.getId())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+            assertEquals("{\"path\":\"/content/a\"}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void refusesJobsOnceTheQueueIsFull() throws Exception {
+        ExtractJob running = service.submit("slow", null, null, ExtractFormat.JSON);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (running.getState() == ExtractJob.State.QUEUED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ExtractJob queued = service.submit("slow", null, null, ExtractFormat.JSON);
+
+        assertThrows(IllegalStateException.class, () -> service.submit("slow", null, null, ExtractFormat.JSON));
+
+        service.cancel(queued.getId());
+        assertEquals(ExtractJob.State.CANCELLED, queued.getState());
+        assertNull(service.openResult(queued.getId()));
+        service.submit("slow", null, null, ExtractFormat.JSON);
+    }
+
+    @Test
+    void failsOnAnyException() throws Exception {
+        ExtractJob job = service.submit("broken", null, null, ExtractFormat.JSON);
+
+        awaitDone(job);
+
+        assertEquals(ExtractJob.State.FAILED, job.getState());
+        assertEquals("broken", job.getError());
+    }
+
+    @Test
+    void deactivateWaitsForRunningJobs() throws Exception {
+        ExtractJob running = service.submit("slow", null, null, ExtractFormat.JSON);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (running.getState() == ExtractJob.State.QUEUED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        service.deactivate();
+
+        assertEquals(ExtractJob.State.CANCELLED, running.getState());
+    }
+
+    private static void awaitDone(ExtractJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.getState().isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
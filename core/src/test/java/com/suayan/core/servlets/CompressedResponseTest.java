@@ -0,0 +1,24 @@
+package com.suayan.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CompressedResponseTest {
+
+    @Test
+    void acceptsGzipWithPositiveQuality() {
+        assertTrue(CompressedResponse.acceptsGzip("gzip, deflate, br"));
+        assertTrue(CompressedResponse.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+        assertTrue(CompressedResponse.acceptsGzip("*"));
+    }
+
+    @Test
+    void refusesGzipThatIsNotAccepted() {
+        assertFalse(CompressedResponse.acceptsGzip(null));
+        assertFalse(CompressedResponse.acceptsGzip("identity"));
+        assertFalse(CompressedResponse.acceptsGzip("gzip;q=0, deflate"));
+        assertFalse(CompressedResponse.acceptsGzip("*, gzip;q=0"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.suayan.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.suayan.core.services.ExtractJobService;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class ExtractJobServletTest {
+
+    @Test
+    void unknownFormatsAreRejected(AemContext context) throws Exception {
+        ExtractJobServlet servlet = new ExtractJobServlet();
+        servlet.jobService = mock(ExtractJobService.class);
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setMethod("POST");
+        request.setParameterMap(Collections.<String, Object>singletonMap("format", "xml"));
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setExtension("json");
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        servlet.doPost(request, response);
+
+        assertEquals(400, response.getStatus());
+        assertEquals("Unknown format: xml", new JSONObject(response.getOutputAsString()).getString("error"));
+        verify(servlet.jobService, never()).submit(any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,65 @@
+package com.suayan.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.suayan.core.services.ScannerService;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class ExtractorServletTest {
+
+    private ExtractorServlet servlet;
+
+    @BeforeEach
+    void setUp() {
+        servlet = new ExtractorServlet();
+        servlet.scanner = mock(ScannerService.class);
+    }
+
+    @Test
+    void fullExtractsGetAWatermark(AemContext context) throws Exception {
+        MockSlingHttpServletResponse full = get(context, "conf", "extract");
+        MockSlingHttpServletResponse page = get(context, "conf", "extract", "limit", "10");
+
+        assertNotNull(full.getHeader("X-Extract-Watermark"));
+        assertNull(page.getHeader("X-Extract-Watermark"));
+    }
+
+    @Test
+    void errorsAreValidJson(AemContext context) throws Exception {
+        MockSlingHttpServletResponse response = get(context, "conf", "extract", "since", "a\"b");
+
+        assertEquals(400, response.getStatus());
+        assertEquals("Invalid since: a\"b", new JSONObject(response.getOutputAsString()).getString("error"));
+    }
+
+    private MockSlingHttpServletResponse get(AemContext context, String... params) throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        for (int i = 0; i < params.length; i += 2) {
+            parameters.put(params[i], params[i + 1]);
+        }
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setParameterMap(parameters);
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setExtension("json");
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(request, response);
+        return response;
+    }
+}
@@ -0,0 +1,125 @@
+package com.suayan.core.sling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jcr.query.Query;
+
+import org.junit.jupiter.api.Test;
+
+class QueryTemplateTest {
+
+    @Test
+    void bindsWholeLiteralsInSql2() {
+        QueryTemplate template = QueryTemplate.parse(
+                "SELECT * FROM [cq:Page] AS s WHERE ISDESCENDANTNODE(s, '{root}') AND s.[jcr:title] = '{title}'",
+                Query.JCR_SQL2);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("root", "/content/ccui");
+        values.put("title", "It's here");
+        Map<String, String> bindings = new LinkedHashMap<String, String>();
+
+        String statement = template.toStatement(values, bindings);
+
+        assertEquals("SELECT * FROM [cq:Page] AS s WHERE ISDESCENDANTNODE(s, '/content/ccui') AND s.[jcr:title] = $title",
+                statement);
+        assertEquals(1, bindings.size());
+        assertEquals("It's here", bindings.get("title"));
+    }
+
+    @Test
+    void escapesInlinedQuotes() {
+        QueryTemplate template = QueryTemplate.parse(
+                "{rootPath}//element(*,nt:unstructured)[{property}='{value}']", "xpath");
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("rootPath", "/content");
+        values.put("property", "@name");
+        values.put("value", "x' or 'a'='a");
+
+        assertEquals("/content//element(*,nt:unstructured)[@name='x'' or ''a''=''a']", template.render(values));
+    }
+
+    @Test
+    void keepsPlaceholdersWithoutValues() {
+        QueryTemplate template = QueryTemplate.parse("SELECT * FROM [nt:base] WHERE [a] LIKE '%{term}%' AND [b] = '{b}'",
+                Query.JCR_SQL2);
+
+        assertEquals("SELECT * FROM [nt:base] WHERE [a] LIKE '%{term}%' AND [b] = '{b}'",
+                template.render(new HashMap<String, String>()));
+        assertTrue(template.getParameterNames().contains("term"));
+        assertEquals(2, template.getParameterNames().size());
+    }
+
+    @Test
+    void statementWithoutPlaceholdersIsStatic() {
+        QueryTemplate template = QueryTemplate.parse("SELECT * FROM [nt:base] WHERE [a] = 'it''s'", Query.JCR_SQL2);
+
+        assertTrue(template.isStatic());
+        assertEquals("SELECT * FROM [nt:base] WHERE [a] = 'it''s'", template.render(null));
+    }
+
+    @Test
+    void restrictsToAPathRangeForKeysetPaging() {
+        QueryTemplate template = QueryTemplate.parse(
+                "SELECT * FROM [cq:Page] AS s WHERE ISDESCENDANTNODE(s, '{root}') OR s.[a] = 'where'", Query.JCR_SQL2);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("root", "/content/ccui");
+        values.put("after", "/content/ccui/a");
+        values.put("until", "/content/ccui/z");
+        Map<String, String> bindings = new LinkedHashMap<String, String>();
+
+        String statement = template.withPathRange("after", "until").toStatement(values, bindings);
+
+        assertEquals("SELECT * FROM [cq:Page] AS s WHERE [jcr:path] > $after AND [jcr:path] <= $until"
+                + " AND (ISDESCENDANTNODE(s, '/content/ccui') OR s.[a] = 'where') ORDER BY [jcr:path]", statement);
+        assertEquals(2, bindings.size());
+        assertEquals("SELECT * FROM [cq:Page] ORDER BY [jcr:path]",
+                QueryTemplate.parse("SELECT * FROM [cq:Page]", Query.JCR_SQL2).withPathRange(null, null).render(null));
+    }
+
+    @Test
+    void keepsItsOwnOrderWithAPathTieBreak() {
+        QueryTemplate ordered = QueryTemplate.parse("SELECT * FROM [cq:Page] AS s ORDER BY s.[jcr:title]",
+                Query.JCR_SQL2);
+        QueryTemplate join = QueryTemplate.parse(
+                "SELECT * FROM [cq:Page] AS p INNER JOIN [nt:base] AS c ON ISCHILDNODE(c, p)", Query.JCR_SQL2);
+
+        assertNull(ordered.withPathRange("after", null));
+        assertEquals("SELECT * FROM [cq:Page] AS s ORDER BY s.[jcr:title], [jcr:path]",
+                ordered.withPathTieBreak().render(null));
+        assertNull(join.withPathRange("after", null));
+        assertSame(join, join.withPathTieBreak());
+        assertNull(QueryTemplate.parse("/jcr:root/content//*", "xpath").withPathRange(null, null));
+    }
+
+    @Test
+    void rejectsUnquotedValuesThatAreNotPathsOrNames() {
+        QueryTemplate xpath = QueryTemplate.parse("{rootPath}//element(*,nt:unstructured)[{property}='{value}']", "xpath");
+        QueryTemplate sql2 = QueryTemplate.parse("SELECT * FROM [{type}] AS s WHERE ISCHILDNODE([{path}])",
+                Query.JCR_SQL2);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("rootPath", "/jcr:root/content/ccui-us");
+        values.put("property", "@sling:resourceType");
+        values.put("value", "ccui/components/text");
+        values.put("type", "cq:Page");
+        values.put("path", "/content/ccui/us");
+
+        assertEquals("/jcr:root/content/ccui-us//element(*,nt:unstructured)[@sling:resourceType='ccui/components/text']",
+                xpath.render(values));
+        assertEquals("SELECT * FROM [cq:Page] AS s WHERE ISCHILDNODE([/content/ccui/us])", sql2.render(values));
+
+        for (String value : new String[] { "/content//*[@a]|/jcr:root", "x or 1=1", "@a]/../*", "/content ]) OR (" }) {
+            values.put("rootPath", value);
+            values.put("path", value);
+            assertThrows(IllegalArgumentException.class, () -> xpath.render(values));
+            assertThrows(IllegalArgumentException.class, () -> sql2.render(values));
+        }
+    }
+}